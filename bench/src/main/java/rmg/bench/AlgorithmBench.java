@@ -0,0 +1,180 @@
+package rmg.bench;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rmg.Engine;
+import rmg.Info;
+import rmg.Spec;
+import rmg.Weights;
+
+/* Benchmarks the algorithms for every combination of the parameters.
+ * The seed is fixed so every invocation generates the same notes, which
+ * lets Main turn the scores into the time and allocation per note.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AlgorithmBench {
+
+	// Seed used for every invocation
+	final static long seed = 42;
+
+	// Algorithm (Algorithm.one, two, three, four, five)
+	@Param({"1", "2", "3", "4", "5"})
+	public int alg;
+
+	// Number of bars in the track
+	@Param({"16", "1000", "100000"})
+	public int bars;
+
+	// Number of notes in the scale (5, 7 or 12)
+	@Param({"5", "7", "12"})
+	public int scale;
+
+	// Note length options (plain, dotted, triplets)
+	@Param({"plain", "dotted", "triplets"})
+	public String lengths;
+
+	// Ratio of rests to notes (none, one rest entry, as many rests as notes)
+	@Param({"none", "some", "half"})
+	public String rests;
+
+	// Weights of the values (equal, or skewed so the alias tables are used)
+	@Param({"equal", "skewed"})
+	public String weights;
+
+	// Chord density, the chord size that is picked most often, or the
+	// chord weights of the weights above
+	@Param({"default", "1", "2", "4"})
+	public String chords;
+
+	private Info info;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		info = info(alg, bars, scale, lengths, rests, weights, chords);
+	}
+
+	@Benchmark
+	public int generate() {
+		info.setSeed(seed);
+		Engine.generate(info);
+		return info.getEvents().size();
+	}
+
+	/* Builds the info for the parameters, the same way the GUI does */
+	static Info info(int alg, int bars, int scale, String lengths, String rests, String weights,
+			String chords) {
+
+		LinkedList<Integer> note = new LinkedList<>();
+		LinkedList<Integer> key = new LinkedList<>();
+		LinkedList<Integer> octave = new LinkedList<>();
+		LinkedList<Long> note_dur = new LinkedList<>();
+		LinkedList<Long> rest_dur = new LinkedList<>();
+
+		// Scale in the key of C
+		int[] notes;
+		switch(scale) {
+			case 5: notes = new int[] {0, 2, 4, 7, 9}; break;
+			case 7: notes = new int[] {0, 2, 3, 5, 7, 8, 11}; break;
+			default: notes = new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11}; break;
+		}
+		for(int n : notes) {
+			note.add(n);
+		}
+
+		// Two keys so algorithm three can change keys
+		key.add(6);
+		key.add(1);
+		octave.add(3);
+		octave.add(4);
+		octave.add(5);
+
+		// 1/16, 1/8 and 1/4 notes
+		note_dur.add(240L);
+		note_dur.add(480L);
+		note_dur.add(960L);
+
+		// Rests of 1/8
+		if(!rests.equals("none")) {
+			rest_dur.add(480L);
+		}
+
+		Engine.options(note_dur, rest_dur, lengths.equals("dotted"), false, lengths.equals("triplets"));
+		Engine.check(note, key, octave, note_dur, rest_dur);
+
+		// Adding a rest for every note, check() already added one
+		if(rests.equals("half")) {
+			for(int i = 1; i < notes.length; i++) {
+				note.add(-1);
+			}
+		}
+
+		// Making the first values more likely, and small chords more likely
+		// than large ones
+		Weights w = new Weights();
+		if(weights.equals("skewed")) {
+			w.setNote(skewed(note.size()));
+			w.setKey(skewed(key.size()));
+			w.setOctave(skewed(octave.size()));
+			w.setNote_dur(skewed(note_dur.size()));
+			w.setRest_dur(skewed(rest_dur.size()));
+			w.setChord(skewed(10));
+		}
+		if(!chords.equals("default")) {
+			w.setChord(dense(Integer.parseInt(chords), 10));
+		}
+
+		Info info = new Info();
+		info.setAlgorithm(alg);
+		info.setBars(bars);
+		info.setSpec(new Spec(note, key, octave, note_dur, rest_dur, w));
+
+		return info;
+
+	}
+
+	/* Returns chord weights where the size is picked most of the time */
+	static List<Double> dense(int size, int sizes) {
+
+		List<Double> list = new ArrayList<>();
+		for(int i = 1; i <= sizes; i++) {
+			list.add(i == size ? 8.0 : 1.0 / sizes);
+		}
+
+		return list;
+
+	}
+
+	/* Returns weights that go down from the first value to the last */
+	static List<Double> skewed(int size) {
+
+		List<Double> list = new ArrayList<>();
+		for(int i = 0; i < size; i++) {
+			list.add(1.0 / (i + 1));
+		}
+
+		return list;
+
+	}
+
+}
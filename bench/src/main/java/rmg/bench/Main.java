@@ -0,0 +1,67 @@
+package rmg.bench;
+
+import java.util.Collection;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import rmg.Engine;
+import rmg.Info;
+
+/* Runs the benchmarks with the GC profiler and prints the operations
+ * per second, the time per note and the bytes allocated per note for
+ * every combination of parameters. Takes the same arguments as JMH,
+ * for example -p alg=1 -p bars=1000 to run only some of them.
+ */
+public class Main {
+
+	public static void main(String[] args) throws Exception {
+
+		Options opts = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.include(AlgorithmBench.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build();
+
+		Collection<RunResult> results = new Runner(opts).run();
+
+		System.out.println();
+		System.out.printf("%-4s %-7s %-6s %-9s %-5s %-7s %-7s %14s %12s %10s %10s%n",
+				"alg", "bars", "scale", "lengths", "rests", "weights", "chords", "ops/s", "notes/op", "ns/note", "B/note");
+
+		for(RunResult result : results) {
+
+			BenchmarkParams p = result.getParams();
+			int alg = Integer.parseInt(p.getParam("alg"));
+			int bars = Integer.parseInt(p.getParam("bars"));
+			int scale = Integer.parseInt(p.getParam("scale"));
+			String lengths = p.getParam("lengths");
+			String rests = p.getParam("rests");
+			String weights = p.getParam("weights");
+			String chords = p.getParam("chords");
+
+			// Generating once with the same seed to count the notes
+			Info info = AlgorithmBench.info(alg, bars, scale, lengths, rests, weights, chords);
+			info.setSeed(AlgorithmBench.seed);
+			Engine.generate(info);
+			double notes = Math.max(1, info.getEvents().size() / 2);
+
+			double ops = result.getPrimaryResult().getScore();
+			Result<?> alloc = result.getSecondaryResults().get("gc.alloc.rate.norm");
+			double bytes = alloc == null ? Double.NaN : alloc.getScore();
+
+			System.out.printf("%-4d %-7d %-6d %-9s %-5s %-7s %-7s %14.1f %12.0f %10.2f %10.3f%n",
+					alg, bars, scale, lengths, rests, weights, chords, ops, notes,
+					1e9 / ops / notes, bytes / notes);
+
+		}
+
+	}
+
+}
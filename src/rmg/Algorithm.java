@@ -1,56 +1,55 @@
 package rmg;
 
-import java.util.LinkedList;
-import java.util.Random;
+import java.util.SplittableRandom;
 import javax.sound.midi.InvalidMidiDataException;
-import javax.sound.midi.MidiEvent;
-import javax.sound.midi.ShortMessage;
-import javax.sound.midi.Track;
 
 /* Static class that takes input from RMG and 
- * adds notes to the track.
+ * adds notes to the event buffer of the track.
  */
 public class Algorithm {
 
-	/* Every algorithm has the following parameters
-	 * @param t Track that notes will be added to
-	 * @param bars Number of bars that the track has
-	 * @param note List of valid notes
-	 * @param key List of valid keys
-	 * @param octave List of valid octaves
-	 * @param note_dur List of valid note durations
-	 * @param rest_dur List of valid rest durations
+	/* Every algorithm has the following parameter
+	 * @param info Info with the spec, the number of bars and the seed.
+	 *        The notes are added to its event buffer starting at its
+	 *        time, and its time, random numbers and key are updated
+	 *        so that more bars can be added later. The bars are counted
+	 *        from the end of the last bars, not from the last note, so
+	 *        adding the bars in parts gives the same notes
 	 * @return The time that the last note ends
 	 */
 
 	// Variables for readability and functionality
-	final static Random random = new Random();
 	final static int rest = -1;
 	final static long triplet = -2;
-	final static int max = 127;
 	final static int num_notes = 12;
 	final static int multiplier = 100;
 	final static long resolution = 960;
 
+	// One in this many notes of algorithm five jumps to a random
+	// octave, and one in this many changes the key
+	final static int jump = 8;
+	final static int modulation = 16;
+
 	/* Algorithm that chooses a random note in a random key
 	 * and random octave and adds it to the track.
 	 */
 	public static long one(Info info) {
 
 		// Getting track info into variables
-		Track t = info.getT();
+		EventBuffer t = events(info);
+		int channel = info.getChannel();
 		int bars = info.getBars();
-		LinkedList<Integer> note = info.getNote();
-		LinkedList<Integer> key = info.getKey();
-		LinkedList<Integer> octave = info.getOctave();
-		LinkedList<Long> note_dur = info.getNote_dur();
-		LinkedList<Long> rest_dur = info.getRest_dur();
+		Spec spec = info.getSpec();
+		int[] note = spec.note;
+		long[] note_dur = spec.note_dur;
+		long[] rest_dur = spec.rest_dur;
+		SplittableRandom random = random(info);
 
 		// Variables that keep track of current position in the track, the end
-		// of the track, the key, the note, the octave, and the note/rest length.
-		long time = 0;
+		// of the bars being added, the key, the note, the octave, and the note/rest length.
+		long time = info.getTime();
 		long length = 0;
-		long end = (long) (resolution * 4) * bars;
+		long end = info.getEnd() + resolution * 4 * bars;
 		int keyVal = 0;
 		int octVal = 0;
 		int noteVal = 0;
@@ -59,86 +58,79 @@ public class Algorithm {
 		// the number of bars specified by the user
 		while(time < end) {
 
-			System.out.print("Time: " + time + " ");
-
 			// Getting a random note
-			keyVal = random.nextInt(key.size());
-			octVal = random.nextInt(octave.size());
-			noteVal = random.nextInt(note.size());
+			keyVal = spec.nextKey(random);
+			octVal = spec.nextOctave(random);
+			noteVal = spec.nextNote(random);
 
 			// Getting the int value of the random integer in the list.
 			// If the value indicates a rest, then pick the corresponding rest length.
-			if(note.get(noteVal).intValue() == rest) {
-				length = rest_dur.get(random.nextInt(rest_dur.size()));
+			if(note[noteVal] == rest) {
+				length = rest_dur[spec.nextRestDur(random)];
+				Trace.rest(time, length);
 				time += length;
-				System.out.print("Rest: " + length + "\n");
 				continue;
 			}
 
 			// Getting random note length
-			length = note_dur.get(random.nextInt(note_dur.size()));
+			length = note_dur[spec.nextNoteDur(random)];
 
 			// Adding three notes if the 
 			if(length == triplet) {
 
 				// Getting other length that is not a triplet
-				long total = note_dur.get(random.nextInt(note_dur.size() - 1));
+				long total = note_dur[spec.nextStraight(random)];
 				total *= 2;
-				length = (long) total / 3;
+				length = total / 3;
 
 				// Adding note three times, each with random notes
 				for(int i = 0; i < 3; i++) {
 
 					// Getting random note
-					keyVal = random.nextInt(key.size());
-					octVal = random.nextInt(octave.size());
+					keyVal = spec.nextKey(random);
+					octVal = spec.nextOctave(random);
 
 					// Getting note that is not a rest
-					do {
-						noteVal = random.nextInt(note.size());
-					} while ((note.get(noteVal).intValue()) == rest);
+					noteVal = spec.nextTone(random);
 
-					// Getting note in correct key, octave, and note
-					keyVal = key.get(keyVal).intValue();
-					octVal = octave.get(octVal).intValue();
-					noteVal = note.get(noteVal).intValue() + keyVal + (num_notes * octVal);
+					// Getting the pitch of the note in the key and octave
+					noteVal = spec.pitch(keyVal, octVal, noteVal);
 
 					// Choosing different time length if it is the last loop
 					if(i == 2) {
-						addNote(t, noteVal, time, total - (2 * length));
+						addNote(t, channel, noteVal, time, total - (2 * length));
 					}
 					else {
-						addNote(t, noteVal, time, length);
+						addNote(t, channel, noteVal, time, length);
 					}
 
-					System.out.print("Time: " + time + " ");
-					System.out.print("Note: " + noteVal + " ");
-
 					// Incrementing time
 					time += length;
 
 				}
 
-				System.out.print("\n");
 				continue;
 
 			}
 
-			// Getting note in correct key, octave, and note
-			keyVal = key.get(keyVal).intValue();
-			octVal = octave.get(octVal).intValue();
-			noteVal = note.get(noteVal).intValue() + keyVal + (num_notes * octVal);
-
-			System.out.print("Note: " + noteVal + "\n");
+			// Getting the pitch of the note in the key and octave
+			noteVal = spec.pitch(keyVal, octVal, noteVal);
 
 			// Adding note to track
-			addNote(t, noteVal, time, length);
+			addNote(t, channel, noteVal, time, length);
 
 			// Incrementing track length
 			time += length;
 
 		}
 
+		// Saving where the bars ended so more bars can be added later
+		info.setTime(time);
+		info.setEnd(end);
+
+		// Adding the notes to the track if the info has one
+		finish(info, t);
+
 		return time;
 
 	}
@@ -149,19 +141,20 @@ public class Algorithm {
 	public static long two(Info info) {
 
 		// Getting track info into variables
-		Track t = info.getT();
+		EventBuffer t = events(info);
+		int channel = info.getChannel();
 		int bars = info.getBars();
-		LinkedList<Integer> note = info.getNote();
-		LinkedList<Integer> key = info.getKey();
-		LinkedList<Integer> octave = info.getOctave();
-		LinkedList<Long> note_dur = info.getNote_dur();
-		LinkedList<Long> rest_dur = info.getRest_dur();
+		Spec spec = info.getSpec();
+		int[] note = spec.note;
+		long[] note_dur = spec.note_dur;
+		long[] rest_dur = spec.rest_dur;
+		SplittableRandom random = random(info);
 
 		// Variables that keep track of current position in the track, the end
-		// of the track, the key, the note, the octave, and the note/rest length.
-		long time = 0;
+		// of the bars being added, the key, the note, the octave, and the note/rest length.
+		long time = info.getTime();
 		long length = 0;
-		long end = (long) (resolution * 4) * bars;
+		long end = info.getEnd() + resolution * 4 * bars;
 		int keyVal = 0;
 		int octVal = 0;
 		int noteVal = 0;
@@ -171,67 +164,58 @@ public class Algorithm {
 		// the number of bars specified by the user
 		while(time < end) {
 
-			System.out.print("Time: " + time + " ");
-
 			// Getting a random note that is in the 
-			keyVal = random.nextInt(key.size());
-			octVal = random.nextInt(octave.size());
-			noteVal = random.nextInt(note.size());
+			keyVal = spec.nextKey(random);
+			octVal = spec.nextOctave(random);
+			noteVal = spec.nextNote(random);
 
 			// Getting the int value of the random integer in the list.
 			// If the value indicates a rest, then pick the corresponding rest length.
-			if(note.get(noteVal).intValue() == rest) {
-				length = rest_dur.get(random.nextInt(rest_dur.size()));
+			if(note[noteVal] == rest) {
+				length = rest_dur[spec.nextRestDur(random)];
+				Trace.rest(time, length);
 				time += length;
-				System.out.println("Rest: " + length + "\n");
 				continue;
 			}
 
 			// Getting random note length
-			length = note_dur.get(random.nextInt(note_dur.size())).longValue();
+			length = note_dur[spec.nextNoteDur(random)];
 
 			// Adding three notes if the 
 			if(length == triplet) {
 
 				// Getting other length that is not a triplet
-				long total = note_dur.get(random.nextInt(note_dur.size() - 1));
+				long total = note_dur[spec.nextStraight(random)];
 				total *= 2;
-				length = (long) total / 3;
+				length = total / 3;
 
 				// Adding note three times, each with random notes
 				for(int i = 0; i < 3; i++) {
 
 					// Getting chord size ranging from 1 to 6 notes
-					chord =  random.nextInt(7) + 1;
+					chord =  spec.nextTripletChord(random);
 
 					// Adding notes to the track with the same start time and
 					// length, effectively creating a chord
 					for(int j = 0; j < chord; j++) {
 
 						// Getting random note
-						keyVal = random.nextInt(key.size());
-						octVal = random.nextInt(octave.size());
+						keyVal = spec.nextKey(random);
+						octVal = spec.nextOctave(random);
 
 						// Getting note that is not a rest
-						do {
-							noteVal = random.nextInt(note.size());
-						} while ((note.get(noteVal).intValue()) == rest);
+						noteVal = spec.nextTone(random);
 
-						// Getting note in correct key, octave, and note
-						keyVal = key.get(keyVal).intValue();
-						octVal = octave.get(octVal).intValue();
-						noteVal = note.get(noteVal).intValue() + keyVal + (num_notes * octVal);
+						// Getting the pitch of the note in the key and octave
+						noteVal = spec.pitch(keyVal, octVal, noteVal);
 
 						if(i == 2) {
-							addNote(t, noteVal, time, total - (2 * length));
+							addNote(t, channel, noteVal, time, total - (2 * length));
 						}
 						else {
-							addNote(t, noteVal, time, length);
+							addNote(t, channel, noteVal, time, length);
 						}
 
-						System.out.print("Time: " + time + " ");
-						System.out.println("Note: " + noteVal + " ");
-
 					}
 
 					// Incrementing time
@@ -239,34 +223,27 @@ public class Algorithm {
 
 				}
 
-				System.out.print("\n");
 				continue;
 
 			}
 
 			// Getting chord size ranging from 1 to 10 notes
-			chord =  random.nextInt(10) + 1;
+			chord =  spec.nextChord(random);
 
 			// Adding notes to the track with the same start time and
 			// length, effectively creating a chord
 			for(int j = 0; j < chord; j++) {
 
 				// Getting note that is not a rest
-				do {
-					noteVal = random.nextInt(note.size());
-				} while((note.get(noteVal).intValue()) == rest);
+				noteVal = spec.nextTone(random);
 
-				// Getting note in correct key, and octave
-				keyVal = random.nextInt(key.size());
-				octVal = random.nextInt(octave.size());
-				keyVal = key.get(keyVal).intValue();
-				octVal = octave.get(octVal).intValue();
-				noteVal = note.get(noteVal).intValue() + keyVal + (num_notes * octVal);
-
-				System.out.print("Note: " + noteVal + "\n");
+				// Getting the pitch of the note in a random key and octave
+				keyVal = spec.nextKey(random);
+				octVal = spec.nextOctave(random);
+				noteVal = spec.pitch(keyVal, octVal, noteVal);
 
 				// Adding note to track
-				addNote(t, noteVal, time, length);
+				addNote(t, channel, noteVal, time, length);
 
 			}
 
@@ -275,6 +252,13 @@ public class Algorithm {
 
 		}
 
+		// Saving where the bars ended so more bars can be added later
+		info.setTime(time);
+		info.setEnd(end);
+
+		// Adding the notes to the track if the info has one
+		finish(info, t);
+
 		return time;
 
 	}
@@ -285,201 +269,561 @@ public class Algorithm {
 	public static long three(Info info) {
 
 		// Getting track info into variables
-		Track t = info.getT();
+		EventBuffer t = events(info);
+		int channel = info.getChannel();
 		int bars = info.getBars();
-		LinkedList<Integer> note = info.getNote();
-		LinkedList<Integer> key = info.getKey();
-		LinkedList<Integer> octave = info.getOctave();
-		LinkedList<Long> note_dur = info.getNote_dur();
-		LinkedList<Long> rest_dur = info.getRest_dur();
+		Spec spec = info.getSpec();
+		int[] note = spec.note;
+		int[] key = spec.key;
+		long[] note_dur = spec.note_dur;
+		long[] rest_dur = spec.rest_dur;
+		SplittableRandom random = random(info);
 
 		// Variables that keep track of current position in the track, the end
-		// of the track, the key, the note, the octave, and the note/rest length.
-		long time = 0;
+		// of the bars being added, the key, the note, the octave, and the note/rest length.
+		long time = info.getTime();
 		long length = 0;
-		long end = (long) (resolution * 4) * bars;
-		int keyVal = key.get(random.nextInt(key.size())).intValue();
+		long end = info.getEnd() + resolution * 4 * bars;
+		int keyVal = 0;
 		int octVal = 0;
 		int noteVal = 0;
 
-		// Matrix that contains the number of common notes between keys
-		@SuppressWarnings("unchecked")
-		LinkedList<Integer>[] common = new LinkedList[num_notes];
-
-		// Adding the key to the list in the array corresponding with the note
-		for(int i = 0; i < key.size(); i++) {
-
-			for(int j = 0; j < note.size(); j++) {
-
-				// Getting note in key and adding the key to the corresponding
-				// linked list in the array
-				keyVal = key.get(i).intValue();
-				noteVal = note.get(j).intValue();
-				
-				// Skipping iteration if the note is a rest (-1)
-				if(noteVal == rest) {
-					continue;
-				}
-				
-				// Getting real note value
-				noteVal = (noteVal + keyVal) % num_notes;
-
-				// Creating new LinkedList if it does not exist
-				if(common[noteVal] == null) {
-					common[noteVal] = new LinkedList<Integer>();
-				}
-
-				// Adding key to array
-				common[noteVal].add(new Integer(keyVal));
-
-			}
+		// Keys that every pitch class can change to
+		KeyGraph graph = spec.graph;
 
+		// Continuing in the key the last bars ended in, or starting
+		// in a random key
+		keyVal = info.getKeyVal();
+		if(keyVal < 0) {
+			keyVal = key[spec.nextKey(random)];
 		}
 		
-		/* debug */
-		for(int i = 0; i < common.length; i++) {
-			System.out.print("Note: " + i);
-			if(common[i] != null) {
-				for(int j = 0; j < common[i].size(); j++) {
-					System.out.print("Key: " + common[i].get(j));
-				}
-			}
-			System.out.print("\n");
-		}
-
 		// Adds notes to the track while the current time is less than 
 		// the number of bars specified by the user
 		while(time < end) {
 
-			System.out.print("Time: " + time + " ");
-
 			// Getting a random note
-			noteVal = random.nextInt(note.size());
+			noteVal = spec.nextNote(random);
 
 			// Getting the int value of the random integer in the list.
 			// If the value indicates a rest, then pick the corresponding rest length.
-			if(note.get(noteVal).intValue() == rest) {
-				length = rest_dur.get(random.nextInt(rest_dur.size()));
+			if(note[noteVal] == rest) {
+				length = rest_dur[spec.nextRestDur(random)];
+				Trace.rest(time, length);
 				time += length;
-				System.out.print("Rest: " + length + "\n");
 				continue;
 			}
 
 			// Getting random note length
-			length = note_dur.get(random.nextInt(note_dur.size()));
+			length = note_dur[spec.nextNoteDur(random)];
 
 			// Adding three notes if the 
 			if(length == triplet) {
 
 				// Getting other length that is not a triplet
-				long total = note_dur.get(random.nextInt(note_dur.size() - 1));
+				long total = note_dur[spec.nextStraight(random)];
 				total *= 2;
-				length = (long) total / 3;
+				length = total / 3;
 
 				// Adding note three times, each with random notes
 				for(int i = 0; i < 3; i++) {
 
 					// Getting random octave
-					octVal = random.nextInt(octave.size());
+					octVal = spec.nextOctave(random);
 
 					// Getting note that is not a rest
-					do {
-						noteVal = random.nextInt(note.size());
-					} while ((note.get(noteVal).intValue()) == rest);
+					noteVal = spec.nextTone(random);
 
-					// Getting note in correct key and octave
-					octVal = octave.get(octVal).intValue();
-					noteVal = note.get(noteVal).intValue() + keyVal + (num_notes * octVal);
+					// Getting the pitch of the note in the key and octave
+					noteVal = spec.pitchIn(keyVal, octVal, noteVal);
 
 					// Choosing different time length if it is the last loop
 					if(i == 2) {
-						addNote(t, noteVal, time, total - (2 * length));
+						addNote(t, channel, noteVal, time, total - (2 * length));
 					}
 					else {
-						addNote(t, noteVal, time, length);
+						addNote(t, channel, noteVal, time, length);
 					}
 
-					System.out.print("Time: " + time + " ");
-					System.out.print("Note: " + noteVal + " ");
-
 					// Incrementing time
 					time += length;
 
 				}
 
-				System.out.print("\n");
 				continue;
 
 			}
 
-			// Getting note in correct key, and octave
-			octVal = random.nextInt(octave.size());
-			octVal = octave.get(octVal).intValue();
-			noteVal = note.get(noteVal).intValue() + keyVal + (num_notes * octVal);
-
-			System.out.print("Note: " + noteVal + "\n");
+			// Getting the pitch of the note in the key and a random octave
+			octVal = spec.nextOctave(random);
+			noteVal = spec.pitchIn(keyVal, octVal, noteVal);
 
 			// Adding note to track
-			addNote(t, noteVal, time, length);
+			addNote(t, channel, noteVal, time, length);
 
 			// Incrementing track length
 			time += length;
 			
 			noteVal = noteVal % num_notes;
-			
-			System.out.print("NoteVal = " + noteVal + "\n");
 				
 			// Determining if there should be a key change
 			if(random.nextBoolean() && random.nextBoolean()) {
 
-				// Getting new key from common array
-				keyVal = random.nextInt(common[noteVal].size());
-				keyVal = common[noteVal].get(keyVal).intValue();
+				// Getting new key out of the keys that have the note
+				int[] keys = graph.candidates(noteVal);
+				keyVal = keys[random.nextInt(keys.length)];
 				
-				System.out.println("\nKey Changed to " + keyVal);
+				Trace.key(time, keyVal);
 
 			}
 
 		}
 
+		// Saving where the bars ended so more bars can be added later
+		info.setTime(time);
+		info.setEnd(end);
+		info.setKeyVal(keyVal);
+
+		// Adding the notes to the track if the info has one
+		finish(info, t);
+
 		return time;
 
 	}
 	
 	/* Algorithm that chooses random chords in a key and switches
 	 * the key if one of the notes in the chord is also 
-	 * present in another key.
+	 * present in another key. The notes of every chord are kept as a
+	 * mask of pitch classes, so the keys that contain the whole chord
+	 * are found with an AND for each of its notes.
 	 */
 	public static long four(Info info) {
-		return 0;
+
+		// Getting track info into variables
+		EventBuffer t = events(info);
+		int channel = info.getChannel();
+		int bars = info.getBars();
+		Spec spec = info.getSpec();
+		int[] note = spec.note;
+		int[] key = spec.key;
+		long[] note_dur = spec.note_dur;
+		long[] rest_dur = spec.rest_dur;
+		SplittableRandom random = random(info);
+
+		// Variables that keep track of current position in the track, the end
+		// of the bars being added, the key, the note, the octave, and the note/rest length.
+		long time = info.getTime();
+		long length = 0;
+		long end = info.getEnd() + resolution * 4 * bars;
+		int keyVal = 0;
+		int octVal = 0;
+		int noteVal = 0;
+		int chord = 0;
+		int mask = 0;
+
+		// Continuing in the key the last bars ended in, or starting
+		// in a random key
+		keyVal = info.getKeyVal();
+		if(keyVal < 0) {
+			keyVal = key[spec.nextKey(random)];
+		}
+
+		// Adds notes to the track while the current time is less than 
+		// the number of bars specified by the user
+		while(time < end) {
+
+			// Getting a random note
+			noteVal = spec.nextNote(random);
+
+			// Getting the int value of the random integer in the list.
+			// If the value indicates a rest, then pick the corresponding rest length.
+			if(note[noteVal] == rest) {
+				length = rest_dur[spec.nextRestDur(random)];
+				Trace.rest(time, length);
+				time += length;
+				continue;
+			}
+
+			// Getting random note length
+			length = note_dur[spec.nextNoteDur(random)];
+
+			// Adding three chords if the length is a triplet
+			if(length == triplet) {
+
+				// Getting other length that is not a triplet
+				long total = note_dur[spec.nextStraight(random)];
+				total *= 2;
+				length = total / 3;
+
+				// Adding a chord three times, all in the same key
+				mask = 0;
+				for(int i = 0; i < 3; i++) {
+
+					// Getting chord size ranging from 1 to 7 notes
+					chord = spec.nextTripletChord(random);
+
+					// Adding notes in the key with the same start time and length
+					for(int j = 0; j < chord; j++) {
+
+						octVal = spec.nextOctave(random);
+						noteVal = spec.pitchIn(keyVal, octVal, spec.nextTone(random));
+						mask |= 1 << (noteVal % num_notes);
+
+						if(i == 2) {
+							addNote(t, channel, noteVal, time, total - (2 * length));
+						}
+						else {
+							addNote(t, channel, noteVal, time, length);
+						}
+
+					}
+
+					// Incrementing time
+					time += length;
+
+				}
+
+			}
+			else {
+
+				// Getting chord size ranging from 1 to 10 notes
+				chord = spec.nextChord(random);
+
+				// Adding notes in the key with the same start time and length
+				mask = 0;
+				for(int j = 0; j < chord; j++) {
+
+					octVal = spec.nextOctave(random);
+					noteVal = spec.pitchIn(keyVal, octVal, spec.nextTone(random));
+					mask |= 1 << (noteVal % num_notes);
+
+					addNote(t, channel, noteVal, time, length);
+
+				}
+
+				// Incrementing track length
+				time += length;
+
+			}
+
+			// Determining if there should be a key change
+			if(random.nextBoolean() && random.nextBoolean()) {
+
+				// Getting a new key out of the keys that have every note of
+				// the chord, which always includes the current key
+				int keys = spec.graph.keysContaining(mask);
+				if(keys != 0) {
+					keyVal = Spec.select(keys, random.nextInt(Integer.bitCount(keys)));
+					Trace.key(time, keyVal);
+				}
+
+			}
+
+		}
+
+		// Saving where the bars ended so more bars can be added later
+		info.setTime(time);
+		info.setEnd(end);
+		info.setKeyVal(keyVal);
+
+		// Adding the notes to the track if the info has one
+		finish(info, t);
+
+		return time;
+
 	}
 
-	/* Adds a note to the track */
-	private static void addNote(Track track, int note, long time, long length) {
+	/* Algorithm that plays a melody from a Markov model, so every note
+	 * and length depends on the ones before it (see Markov). The octave
+	 * is the one closest to the last note, except for an occasional
+	 * jump, and the key changes rarely, to a key that has the note.
+	 */
+	public static long five(Info info) {
 
-		// Subtracting 12 from the note value if it 
-		// is out of the range of valid notes
-		while(note > max) {
-			note -= num_notes;
+		// Getting track info into variables
+		EventBuffer t = events(info);
+		int channel = info.getChannel();
+		int bars = info.getBars();
+		Spec spec = info.getSpec();
+		int[] key = spec.key;
+		SplittableRandom random = random(info);
+		Markov markov = Markov.get(spec, info.getOrder());
+
+		// Variables that keep track of current position in the track, the end
+		// of the bars being added, the key, the note, the octave, and the note/rest length.
+		long time = info.getTime();
+		long length = 0;
+		long end = info.getEnd() + resolution * 4 * bars;
+		int keyVal = 0;
+		int octVal = 0;
+		int noteVal = 0;
+		int state = 0;
+
+		// Continuing from the notes and key the last bars ended with,
+		// or starting at the start of the model in a random key
+		int context = info.getContext();
+		if(context < 0) {
+			context = markov.start();
+		}
+		int last = info.getPitch();
+		keyVal = info.getKeyVal();
+		if(keyVal < 0) {
+			keyVal = key[spec.nextKey(random)];
 		}
 
-		// Adding note to track
-		try{
+		// Adds notes to the track while the current time is less than 
+		// the number of bars specified by the user
+		while(time < end) {
 
-			// Turning note on
-			ShortMessage sm = new ShortMessage();
-			sm.setMessage(0x90, note, 0x60);
-			track.add(new MidiEvent(sm, time));
+			// Getting the next state from the last ones
+			state = markov.next(context, random);
+			context = markov.push(context, state);
+			length = markov.length(state);
+
+			// Adding the rest if the state is a rest
+			if(markov.isRest(state)) {
+				Trace.rest(time, length);
+				time += length;
+				continue;
+			}
+
+			// Getting the octave that is closest to the last note, or
+			// jumping to a random octave once in a while
+			if(last < 0 || random.nextInt(jump) == 0) {
+				octVal = spec.nextOctave(random);
+			}
+			else {
+				octVal = closestOctave(spec, keyVal, markov.note(state), last);
+			}
+
+			// Getting the pitch of the note in the key and octave
+			noteVal = spec.pitchIn(keyVal, octVal, markov.note(state));
+
+			// Adding note to track
+			addNote(t, channel, noteVal, time, length);
+			last = noteVal;
+
+			// Incrementing track length
+			time += length;
+
+			// Determining if there should be a key change
+			if(random.nextInt(modulation) == 0) {
+
+				// Getting new key out of the keys that have the note
+				int[] keys = spec.graph.candidates(noteVal % num_notes);
+				keyVal = keys[random.nextInt(keys.length)];
+
+				Trace.key(time, keyVal);
+
+			}
+
+		}
 
-			// Turning note off
-			sm = new ShortMessage();
-			sm.setMessage(0x80, note, 0x40);
-			track.add(new MidiEvent(sm, (time + length)));
+		// Saving where the bars ended so more bars can be added later
+		info.setTime(time);
+		info.setEnd(end);
+		info.setKeyVal(keyVal);
+		info.setContext(context);
+		info.setPitch(last);
 
+		// Adding the notes to the track if the info has one
+		finish(info, t);
+
+		return time;
+
+	}
+
+	/* Algorithm that plays the notes and lengths that followed the last
+	 * ones in the midi files of an index (see NgramIndex). The index only
+	 * has pitch classes, so the octave is picked the same way as in
+	 * algorithm five, and the track is played in the keys of the spec.
+	 * Tracks without an index are played by algorithm five.
+	 */
+	public static long six(Info info) {
+
+		NgramIndex index = info.getIndex();
+		if(index == null) {
+			return five(info);
+		}
+
+		// Getting track info into variables
+		EventBuffer t = events(info);
+		int channel = info.getChannel();
+		int bars = info.getBars();
+		Spec spec = info.getSpec();
+		int[] key = spec.key;
+		SplittableRandom random = random(info);
+
+		// Variables that keep track of current position in the track, the end
+		// of the bars being added, the key, the note, the octave, and the note/rest length.
+		long time = info.getTime();
+		long length = 0;
+		long end = info.getEnd() + resolution * 4 * bars;
+		int noteVal = 0;
+		int token = 0;
+
+		// Continuing from the notes and key the last bars ended with,
+		// or starting with no history in a random key
+		long history = info.getHistory();
+		int last = info.getPitch();
+		int keyVal = info.getKeyVal();
+		if(keyVal < 0) {
+			keyVal = key[spec.nextKey(random)];
+		}
+
+		// Adds notes to the track while the current time is less than 
+		// the number of bars specified by the user
+		while(time < end) {
+
+			// Getting the next token from the last ones, stopping if
+			// the index is empty
+			token = index.next(history, random);
+			if(token < 0) {
+				break;
+			}
+			history = index.push(history, token);
+			length = NgramIndex.length(token);
+
+			// Adding the rest if the token is a rest
+			if(NgramIndex.isRest(token)) {
+				Trace.rest(time, length);
+				time += length;
+				continue;
+			}
+
+			// Getting the pitch in the octave that is closest to the last
+			// note, or in a random octave once in a while
+			int pc = (NgramIndex.pitchClass(token) + keyVal) % num_notes;
+			if(last < 0 || random.nextInt(jump) == 0) {
+				noteVal = Spec.fold(0, spec.octave[spec.nextOctave(random)], pc);
+			}
+			else {
+				noteVal = closest(spec, pc, last);
+			}
+
+			// Adding note to track
+			addNote(t, channel, noteVal, time, length);
+			last = noteVal;
+
+			// Incrementing track length
+			time += length;
+
+			// Determining if there should be a key change, to a key
+			// that has the note if there is one
+			if(random.nextInt(modulation) == 0) {
+				int[] keys = spec.graph.candidates(pc);
+				if(keys.length > 0) {
+					keyVal = keys[random.nextInt(keys.length)];
+					Trace.key(time, keyVal);
+				}
+			}
+
+		}
+
+		// Saving where the bars ended so more bars can be added later
+		info.setTime(time);
+		info.setEnd(end);
+		info.setKeyVal(keyVal);
+		info.setHistory(history);
+		info.setPitch(last);
+
+		// Adding the notes to the track if the info has one
+		finish(info, t);
+
+		return time;
+
+	}
+
+	/* Returns the pitch of the pitch class in the octave of the spec
+	 * that is closest to the last pitch
+	 */
+	private static int closest(Spec spec, int pc, int last) {
+
+		int best = 0;
+		int distance = Integer.MAX_VALUE;
+		for(int o = 0; o < spec.octaves; o++) {
+			int p = Spec.fold(0, spec.octave[o], pc);
+			int d = Math.abs(p - last);
+			if(d < distance) {
+				distance = d;
+				best = p;
+			}
+		}
+
+		return best;
+
+	}
+
+	/* Returns the index of the octave where the note is closest to the last pitch */
+	private static int closestOctave(Spec spec, int keyVal, int note, int last) {
+
+		int best = 0;
+		int distance = Integer.MAX_VALUE;
+		for(int o = 0; o < spec.octaves; o++) {
+			int d = Math.abs(spec.pitchIn(keyVal, o, note) - last);
+			if(d < distance) {
+				distance = d;
+				best = o;
+			}
+		}
+
+		return best;
+
+	}
+
+	/* Returns the event buffer of the info, creating it if the info
+	 * does not have one
+	 */
+	private static EventBuffer events(Info info) {
+
+		if(info.getEvents() == null) {
+			info.setEvents(new EventBuffer());
+		}
+
+		return info.getEvents();
+
+	}
+
+	/* Returns the random numbers of the info, creating them from
+	 * the seed when the track is started
+	 */
+	private static SplittableRandom random(Info info) {
+
+		if(info.getRandom() == null) {
+			info.setRandom(new SplittableRandom(info.getSeed()));
+		}
+
+		return info.getRandom();
+
+	}
+
+	/* Adds the events to the track of the info, so callers that
+	 * only set a track still get the notes in it
+	 */
+	private static void finish(Info info, EventBuffer events) {
+
+		if(info.getT() == null) {
+			return;
+		}
+
+		try {
+			events.toTrack(info.getT());
 		} catch (InvalidMidiDataException e) {
 			e.printStackTrace();
 		}
 
 	}
 
+	/* Adds a note to the event buffer, the pitch comes from the
+	 * lattice of the spec so it is always a valid midi note
+	 */
+	private static void addNote(EventBuffer events, int channel, int note, long time, long length) {
+
+		Trace.note(time, note, length);
+
+		// Adding the note on and note off events
+		events.note(channel, note, time, length);
+
+	}
+
 }
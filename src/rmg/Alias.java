@@ -0,0 +1,119 @@
+package rmg;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/* Table that picks an index with a probability proportional to its
+ * weight in constant time, no matter how many indexes there are
+ * (the alias method of Walker, built the way Vose describes). Every
+ * index has a column that is filled to the average weight with its
+ * own weight and the rest with another index, so a pick is one
+ * random column and one random number to choose between the two.
+ *
+ * If all the weights are the same the table is not needed and an
+ * index is picked with a single nextInt, the same as without weights.
+ */
+public final class Alias {
+
+	private final int size;
+	private final boolean uniform;
+	private final double[] prob;
+	private final int[] alias;
+
+	/* Constructor
+	 * @param weights Weight of every index, none can be negative and
+	 *        at least one must be positive if there are any
+	 */
+	public Alias(double[] weights) {
+
+		size = weights.length;
+		prob = new double[size];
+		alias = new int[size];
+
+		// Checking the weights and adding them up
+		double sum = 0;
+		boolean same = true;
+		for(int i = 0; i < size; i++) {
+			if(weights[i] < 0 || Double.isNaN(weights[i]) || Double.isInfinite(weights[i])) {
+				throw new IllegalArgumentException("Invalid weight " + weights[i]);
+			}
+			sum += weights[i];
+			same &= weights[i] == weights[0];
+		}
+		if(size > 0 && sum <= 0) {
+			throw new IllegalArgumentException("All weights are 0");
+		}
+		uniform = same;
+
+		// Scaling the weights so the average is 1 and splitting them
+		// into the columns that are under and over the average
+		int[] small = new int[size];
+		int[] large = new int[size];
+		int s = 0;
+		int l = 0;
+		double[] scaled = new double[size];
+		for(int i = 0; i < size; i++) {
+			scaled[i] = weights[i] * size / sum;
+			if(scaled[i] < 1) {
+				small[s++] = i;
+			}
+			else {
+				large[l++] = i;
+			}
+		}
+
+		// Filling every small column with part of a large one
+		while(s > 0 && l > 0) {
+			int less = small[--s];
+			int more = large[--l];
+			prob[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = (scaled[more] + scaled[less]) - 1;
+			if(scaled[more] < 1) {
+				small[s++] = more;
+			}
+			else {
+				large[l++] = more;
+			}
+		}
+
+		// Whatever is left is full, only rounding kept it from being 1
+		while(l > 0) {
+			prob[large[--l]] = 1;
+		}
+		while(s > 0) {
+			prob[small[--s]] = 1;
+		}
+
+	}
+
+	/* Returns a table where every index has the same weight */
+	public static Alias uniform(int size) {
+		double[] weights = new double[size];
+		Arrays.fill(weights, 1);
+		return new Alias(weights);
+	}
+
+	/* Returns a random index */
+	public int next(SplittableRandom random) {
+
+		int i = random.nextInt(size);
+		if(uniform) {
+			return i;
+		}
+
+		return random.nextDouble() < prob[i] ? i : alias[i];
+
+	}
+
+	/* Returns the number of indexes */
+	public int size() {
+		return size;
+	}
+
+	/* Returns true if every index has the same weight */
+	public boolean isUniform() {
+		return uniform;
+	}
+
+}
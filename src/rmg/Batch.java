@@ -0,0 +1,133 @@
+package rmg;
+
+import java.io.File;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/* Command line program that generates many midi files without
+ * a display. The files are split between all the cores using
+ * a work stealing pool.
+ *
+ * Usage: java -cp RMG.jar rmg.Batch -n 1000 -out dir [-threads n]
+ *        [-ensemble] [-trace keys|notes] [-sample n] [track options]
+ * With -ensemble every file has the four parts of an Ensemble.
+ * Tracks with more than 1024 bars are generated into an EventStore,
+ * so the heap only holds a few bars of every file.
+ * See Options for the options that describe the track, and Trace
+ * for the levels.
+ */
+public class Batch {
+
+	// Number of bars above which the events are kept in a file
+	final static int store_bars = 1024;
+
+	/* Generates the files and prints the number of files per second */
+	public static void main(String[] args) throws Exception {
+
+		Options opts = Options.parse(args);
+		int count = opts.getInt("n", 1000);
+		int threads = opts.getInt("threads", Runtime.getRuntime().availableProcessors());
+		File dir = new File(opts.getString("out", "out"));
+
+		// Recording what is generated if a trace level is given
+		if(opts.has("trace")) {
+			Trace.set(Trace.level(opts.getString("trace", "off")), opts.getInt("sample", 1));
+		}
+
+		// Creating the output directory if it does not exist
+		if(!dir.isDirectory() && !dir.mkdirs()) {
+			System.err.println("Could not create directory " + dir);
+			return;
+		}
+
+		// Generating all the files in the pool and timing it. Every file
+		// gets its own seed that is derived from the seed of the info
+		Info info = opts.info();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		long start = System.nanoTime();
+		pool.invoke(new Job(info, dir, opts.has("ensemble"), 0, count));
+		long elapsed = System.nanoTime() - start;
+		pool.shutdown();
+
+		double seconds = elapsed / 1e9;
+		System.out.printf("%d files in %.3f s (%.1f files/sec, %d threads, seed %d)%n",
+				count, seconds, count / seconds, threads, info.getSeed());
+
+		// Printing the last events that were recorded
+		if(Trace.getLevel() != Trace.off) {
+			Trace.dump(System.out);
+		}
+
+	}
+
+	/* Task that generates the files in the range [from, to), splitting
+	 * the range in half until there is only one file left so that idle
+	 * threads can steal the other half
+	 */
+	static class Job extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Info info;
+		private final File dir;
+		private final boolean ensemble;
+		private final int from;
+		private final int to;
+
+		Job(Info info, File dir, boolean ensemble, int from, int to) {
+			this.info = info;
+			this.dir = dir;
+			this.ensemble = ensemble;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			// Nothing to do if the range is empty
+			if(from >= to) {
+				return;
+			}
+
+			// Splitting the range if there is more than one file
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Job(info, dir, ensemble, from, mid), new Job(info, dir, ensemble, mid, to));
+				return;
+			}
+
+			// Generating the notes and writing them straight to a file.
+			// Long tracks are generated into event stores so they do not
+			// have to fit on the heap
+			Info copy = info.copy();
+			copy.setSeed(Engine.seed(info.getSeed(), from));
+			Info[] parts = ensemble ? Ensemble.parts(copy) : new Info[] {copy};
+			try {
+				long time = copy.getBars() > store_bars ? Ensemble.store(parts) : Ensemble.generate(parts);
+				File file = new File(dir, String.format("rmg-%06d.mid", from));
+				MidiWriter.write(file, 1, time + Engine.resolution, parts);
+			} catch (Exception e) {
+				e.printStackTrace();
+			} finally {
+				close(parts);
+			}
+
+		}
+
+	}
+
+	/* Closes the event stores of the parts, deleting their files */
+	private static void close(Info[] parts) {
+		for(Info part : parts) {
+			try {
+				if(part.getStore() != null) {
+					part.getStore().close();
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,567 @@
+package rmg;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/* Learns the notes, keys, octaves and lengths of a track from a folder
+ * of midi files, so the algorithms can play in the style of the files.
+ * Every file is read with a MidiReader and counted into histograms:
+ *
+ *   Keys       The major key (or its relative minor) whose scale has
+ *              the most notes of the file
+ *   Notes      Pitch classes moved into the key of C by the key
+ *   Octaves    Octaves of the notes in their key, the same way Spec
+ *              builds a pitch from a key, octave and note
+ *   Intervals  Distance between two notes that follow each other on
+ *              a channel, from 0 to 6 semitones
+ *   Lengths    Lengths of the notes and of the silences between them,
+ *              rounded to the closest length of the GUI or its dot
+ *
+ * Drums (channel 10) are not counted. The files are split between the
+ * cores with a work stealing pool, every task counts its own files and
+ * the histograms are added together, so nothing is shared while the
+ * files are read. Values that are less than 1% of their histogram are
+ * left out of the spec.
+ *
+ * Usage: java -cp RMG.jar rmg.Corpus -in dir [-threads n]
+ * Prints the histograms and the options of the spec, which can be given
+ * to any of the programs, or use -corpus dir with them instead.
+ */
+public final class Corpus {
+
+	// Variables for readability and functionality
+	final static int num_notes = 12;
+	final static int num_octaves = 11;
+	final static int num_intervals = 7;
+	final static int num_lengths = 10;
+	final static int percussion = 9;
+	final static int resolution = 960;
+	final static long max_dur = 30720;
+	final static long whole = 3840;
+	final static double min_share = 0.01;
+	final static int files_per_task = 16;
+
+	// Notes of the major scale, used to find the key of a file
+	final static int[] major = {0, 2, 4, 5, 7, 9, 11};
+
+	// Lengths that a note or silence is rounded to, the lengths of
+	// the GUI from 8 whole notes to 1/128 and then their dotted lengths
+	final static long[] lengths = new long[num_lengths * 2];
+	static {
+		for(int i = 0; i < num_lengths; i++) {
+			lengths[i] = max_dur >> i;
+			lengths[num_lengths + i] = (max_dur >> i) * 3 / 2;
+		}
+	}
+
+	private final long[] note = new long[num_notes];
+	private final long[] key = new long[num_notes];
+	private final long[] octave = new long[num_octaves];
+	private final long[] interval = new long[num_intervals];
+	private final long[] noteDur = new long[lengths.length];
+	private final long[] restDur = new long[lengths.length];
+	private long files;
+	private long failed;
+	private long bytes;
+
+	/* Reads all the midi files in the folder and its sub folders
+	 * @param dir Folder of the files
+	 * @param threads Number of files that are read at the same time
+	 */
+	public static Corpus scan(Path dir, int threads) throws IOException {
+
+		List<Path> paths = files(dir);
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			return pool.invoke(new Job(paths, 0, paths.size()));
+		} finally {
+			pool.shutdown();
+		}
+
+	}
+
+	/* Adds the histograms of another corpus to this one */
+	public void add(Corpus other) {
+		add(note, other.note);
+		add(key, other.key);
+		add(octave, other.octave);
+		add(interval, other.interval);
+		add(noteDur, other.noteDur);
+		add(restDur, other.restDur);
+		files += other.files;
+		failed += other.failed;
+		bytes += other.bytes;
+	}
+
+	/* Builds a spec with the values that were found and how often
+	 * they were found as their weights
+	 */
+	public Spec spec() {
+
+		List<Integer> notes = new ArrayList<>();
+		List<Integer> keys = new ArrayList<>();
+		List<Integer> octaves = new ArrayList<>();
+		List<Long> noteDurs = new ArrayList<>();
+		List<Long> restDurs = new ArrayList<>();
+		Weights weights = new Weights();
+		weights.setNote(new ArrayList<>());
+		weights.setKey(new ArrayList<>());
+		weights.setOctave(new ArrayList<>());
+		weights.setNote_dur(new ArrayList<>());
+		weights.setRest_dur(new ArrayList<>());
+
+		pick(note, notes, weights.getNote());
+		pick(key, keys, weights.getKey());
+		pick(octave, octaves, weights.getOctave());
+		pickLengths(noteDur, noteDurs, weights.getNote_dur());
+		pickLengths(restDur, restDurs, weights.getRest_dur());
+
+		// Every interval is kept so no row of the Markov chain is empty
+		List<Double> intervals = new ArrayList<>();
+		long total = sum(interval);
+		for(long count : interval) {
+			intervals.add(total == 0 ? 1.0 : (count + 1.0) / (total + num_intervals));
+		}
+		weights.setInterval(intervals);
+
+		// Using the same defaults as the GUI for anything that was not found
+		if(notes.isEmpty() || keys.isEmpty() || octaves.isEmpty() || noteDurs.isEmpty()) {
+			return defaults();
+		}
+
+		// Adding a rest as often as there were silences between the notes
+		long noteCount = sum(noteDur);
+		long restCount = sum(restDur);
+		if(!restDurs.isEmpty()) {
+			notes.add(Spec.rest);
+			weights.getNote().add(sum(weights.getNote()) * restCount / Math.max(noteCount, 1));
+		}
+
+		return new Spec(notes, keys, octaves, noteDurs, restDurs, weights);
+
+	}
+
+	/* Returns the options that give the spec on the command line */
+	public String options() {
+
+		Spec spec = spec();
+		StringBuilder sb = new StringBuilder();
+
+		sb.append("-notes ").append(join(spec.note));
+		sb.append(" -wnotes ").append(join(spec.note_w));
+		sb.append(" -keys ").append(join(spec.key));
+		sb.append(" -wkeys ").append(join(spec.key_w));
+		sb.append(" -octaves ").append(join(spec.octave));
+		sb.append(" -woctaves ").append(join(spec.octave_w));
+		sb.append(" -lengths ").append(fractions(spec.note_dur));
+		sb.append(" -wlengths ").append(join(spec.note_dur_w));
+		if(spec.rest_durs > 0) {
+			sb.append(" -rests ").append(fractions(spec.rest_dur));
+			sb.append(" -wrests ").append(join(spec.rest_dur_w));
+		}
+		sb.append(" -wintervals ").append(join(spec.interval_w));
+
+		return sb.toString();
+
+	}
+
+	/* Prints the histograms of the corpus */
+	public void print() {
+
+		System.out.printf("%d files (%d could not be read), %d bytes, %d notes, %d rests%n",
+				files, failed, bytes, sum(noteDur), sum(restDur));
+		System.out.println("Notes:     " + Arrays.toString(note));
+		System.out.println("Keys:      " + Arrays.toString(key));
+		System.out.println("Octaves:   " + Arrays.toString(octave));
+		System.out.println("Intervals: " + Arrays.toString(interval));
+		System.out.println("Lengths:   " + histogram(noteDur));
+		System.out.println("Rests:     " + histogram(restDur));
+
+	}
+
+	/* Reads the folder given with -in and prints what was learned */
+	public static void main(String[] args) throws IOException {
+
+		Options opts = Options.parse(args);
+		Path dir = Paths.get(opts.getString("in", "."));
+		int threads = opts.getInt("threads", Runtime.getRuntime().availableProcessors());
+
+		long start = System.nanoTime();
+		Corpus corpus = scan(dir, threads);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		corpus.print();
+		System.out.printf("Read in %.3f s (%.1f files/sec, %d threads)%n",
+				seconds, corpus.files / seconds, threads);
+		System.out.println(corpus.options());
+
+	}
+
+	public long getFiles() {
+		return files;
+	}
+
+	public long getFailed() {
+		return failed;
+	}
+
+	/* Returns the midi files in the folder and its sub folders */
+	static List<Path> files(Path dir) throws IOException {
+		try(Stream<Path> walk = Files.walk(dir)) {
+			return walk.filter(Files::isRegularFile).filter(Corpus::isMidi).collect(Collectors.toList());
+		}
+	}
+
+	/* Returns the major key (or its relative minor) whose scale has the
+	 * most of the notes
+	 * @param classes Number of notes of every pitch class
+	 */
+	static int key(long[] classes) {
+
+		int k = 0;
+		long best = -1;
+		for(int r = 0; r < num_notes; r++) {
+			long count = 0;
+			for(int n : major) {
+				count += classes[(r + n) % num_notes];
+			}
+			if(count > best) {
+				best = count;
+				k = r;
+			}
+		}
+
+		return k;
+
+	}
+
+	/* Returns the index of the length that the ticks are closest to. A
+	 * note of a file with a finer resolution can be shorter than a tick
+	 * of RMG, it counts as one tick
+	 */
+	static int length(long ticks) {
+
+		ticks = Math.max(ticks, 1);
+		int best = 0;
+		double distance = Double.MAX_VALUE;
+		for(int i = 0; i < lengths.length; i++) {
+			double ratio = ticks > lengths[i] ? (double) ticks / lengths[i] : (double) lengths[i] / ticks;
+			if(ratio < distance) {
+				distance = ratio;
+				best = i;
+			}
+		}
+
+		return best;
+
+	}
+
+	/* Task that reads the files in the range [from, to), splitting the
+	 * range in half until it is small enough to read in one thread
+	 */
+	static class Job extends RecursiveTask<Corpus> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Path> paths;
+		private final int from;
+		private final int to;
+
+		Job(List<Path> paths, int from, int to) {
+			this.paths = paths;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Corpus compute() {
+
+			// Splitting the range if there are too many files
+			if(to - from > files_per_task) {
+				int mid = (from + to) >>> 1;
+				Job left = new Job(paths, from, mid);
+				left.fork();
+				Corpus corpus = new Job(paths, mid, to).compute();
+				corpus.add(left.join());
+				return corpus;
+			}
+
+			// Reading the files into the histograms of this task
+			Corpus corpus = new Corpus();
+			Counter counter = new Counter(corpus);
+			MidiReader reader = new MidiReader();
+			for(int i = from; i < to; i++) {
+				try {
+					counter.start();
+					reader.read(paths.get(i), counter);
+					counter.finish(Files.size(paths.get(i)));
+				} catch (IOException | RuntimeException e) {
+					corpus.failed++;
+				}
+			}
+
+			return corpus;
+
+		}
+
+	}
+
+	/* Listener that counts the notes of one file at a time. The pitches
+	 * are counted first and only added to the corpus at the end of the
+	 * file, when the key of the file is known
+	 */
+	static final class Counter implements MidiReader.Listener {
+
+		private final Corpus corpus;
+		private final long[] pitch = new long[128];
+		private final long[] noteDur = new long[lengths.length];
+		private final long[] restDur = new long[lengths.length];
+		private final long[] interval = new long[num_intervals];
+
+		// State of the track that is read, for every channel
+		private final long[] onTick = new long[16 * 128];
+		private final int[] sounding = new int[16];
+		private final long[] silent = new long[16];
+		private final int[] last = new int[16];
+		private final long[] lastTick = new long[16];
+		private int res;
+
+		Counter(Corpus corpus) {
+			this.corpus = corpus;
+		}
+
+		/* Empties the counts before a file */
+		void start() {
+			Arrays.fill(pitch, 0);
+			Arrays.fill(noteDur, 0);
+			Arrays.fill(restDur, 0);
+			Arrays.fill(interval, 0);
+		}
+
+		/* Adds the counts of the file to the corpus */
+		void finish(long size) {
+
+			// Finding the key whose major scale has the most notes
+			long[] classes = new long[num_notes];
+			for(int p = 0; p < pitch.length; p++) {
+				classes[p % num_notes] += pitch[p];
+			}
+			int k = key(classes);
+
+			// Moving the notes into the key of C
+			long notes = 0;
+			for(int p = 0; p < pitch.length; p++) {
+				if(pitch[p] > 0) {
+					corpus.note[Math.floorMod(p - k, num_notes)] += pitch[p];
+					corpus.octave[Math.max(0, Math.min(Math.floorDiv(p - k, num_notes), num_octaves - 1))] += pitch[p];
+					notes += pitch[p];
+				}
+			}
+			corpus.key[k] += notes;
+
+			Corpus.add(corpus.noteDur, noteDur);
+			Corpus.add(corpus.restDur, restDur);
+			Corpus.add(corpus.interval, interval);
+			corpus.files++;
+			corpus.bytes += size;
+
+		}
+
+		@Override
+		public void header(int type, int tracks, int resolution) {
+			res = resolution;
+		}
+
+		@Override
+		public void track(int index) {
+			Arrays.fill(onTick, -1);
+			Arrays.fill(sounding, 0);
+			Arrays.fill(silent, -1);
+			Arrays.fill(last, -1);
+			Arrays.fill(lastTick, -1);
+		}
+
+		@Override
+		public void message(long tick, int status, int data1, int data2) {
+
+			int type = status & 0xF0;
+			int channel = status & 0x0F;
+			if(channel == percussion || (type != 0x90 && type != 0x80)) {
+				return;
+			}
+
+			int slot = channel * 128 + data1;
+			if(type == 0x90 && data2 > 0) {
+
+				// Counting the silence before the note
+				if(sounding[channel] == 0 && silent[channel] >= 0 && tick > silent[channel]) {
+					restDur[length(ticks(tick - silent[channel]))]++;
+				}
+
+				// Counting the interval from the last note, but not
+				// between the notes of a chord
+				if(last[channel] >= 0 && tick > lastTick[channel]) {
+					int distance = Math.floorMod(data1 - last[channel], num_notes);
+					interval[Math.min(distance, num_notes - distance)]++;
+				}
+				last[channel] = data1;
+				lastTick[channel] = tick;
+
+				if(onTick[slot] < 0) {
+					sounding[channel]++;
+				}
+				onTick[slot] = tick;
+				pitch[data1]++;
+
+			}
+			else if(onTick[slot] >= 0) {
+
+				// Counting the length of the note that ended
+				if(tick > onTick[slot]) {
+					noteDur[length(ticks(tick - onTick[slot]))]++;
+				}
+				onTick[slot] = -1;
+				if(--sounding[channel] == 0) {
+					silent[channel] = tick;
+				}
+
+			}
+
+		}
+
+		/* Converts ticks of the file into ticks of RMG */
+		private long ticks(long ticks) {
+			return ticks * resolution / res;
+		}
+
+	}
+
+	/* Returns true if the file has the extension of a midi file */
+	private static boolean isMidi(Path path) {
+		String name = path.getFileName().toString().toLowerCase();
+		return name.endsWith(".mid") || name.endsWith(".midi") || name.endsWith(".smf");
+	}
+
+	/* Adds the values of a list that are at least the minimum share of
+	 * the histogram, with their shares as weights
+	 */
+	private static void pick(long[] histogram, List<Integer> values, List<Double> weights) {
+
+		long total = sum(histogram);
+		for(int i = 0; i < histogram.length; i++) {
+			if(total > 0 && histogram[i] >= min_share * total) {
+				values.add(i);
+				weights.add((double) histogram[i] / total);
+			}
+		}
+
+	}
+
+	/* Same as pick for the lengths, which are added as ticks */
+	private static void pickLengths(long[] histogram, List<Long> values, List<Double> weights) {
+
+		long total = sum(histogram);
+		for(int i = 0; i < histogram.length; i++) {
+			if(total > 0 && histogram[i] >= min_share * total) {
+				values.add(lengths[i]);
+				weights.add((double) histogram[i] / total);
+			}
+		}
+
+	}
+
+	/* Returns the spec of the GUI when nothing is checked */
+	private static Spec defaults() {
+
+		LinkedList<Integer> notes = new LinkedList<>();
+		LinkedList<Integer> keys = new LinkedList<>();
+		LinkedList<Integer> octaves = new LinkedList<>();
+		LinkedList<Long> noteDurs = new LinkedList<>();
+		LinkedList<Long> restDurs = new LinkedList<>();
+		Engine.check(notes, keys, octaves, noteDurs, restDurs);
+
+		return new Spec(notes, keys, octaves, noteDurs, restDurs);
+
+	}
+
+	private static void add(long[] to, long[] from) {
+		for(int i = 0; i < to.length; i++) {
+			to[i] += from[i];
+		}
+	}
+
+	private static long sum(long[] values) {
+		long sum = 0;
+		for(long value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	private static double sum(List<Double> values) {
+		double sum = 0;
+		for(double value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	/* Joins the values with commas */
+	private static String join(int[] values) {
+		return Arrays.stream(values).mapToObj(Integer::toString).collect(Collectors.joining(","));
+	}
+
+	private static String join(double[] values) {
+		return Arrays.stream(values).mapToObj(v -> String.format(Locale.ROOT, "%.4f", v)).collect(Collectors.joining(","));
+	}
+
+	/* Joins lengths in ticks as fractions of a whole note */
+	private static String fractions(long[] values) {
+
+		StringBuilder sb = new StringBuilder();
+		for(long value : values) {
+			if(sb.length() > 0) {
+				sb.append(',');
+			}
+			long gcd = gcd(value, whole);
+			sb.append(value / gcd);
+			if(whole / gcd != 1) {
+				sb.append('/').append(whole / gcd);
+			}
+		}
+
+		return sb.toString();
+
+	}
+
+	private static long gcd(long a, long b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+
+	/* Returns a histogram of lengths with each length as a fraction */
+	private static String histogram(long[] counts) {
+
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < counts.length; i++) {
+			if(counts[i] > 0) {
+				sb.append(fractions(new long[] {lengths[i]})).append('=').append(counts[i]).append(' ');
+			}
+		}
+
+		return sb.toString().trim();
+
+	}
+
+}
@@ -0,0 +1,224 @@
+package rmg;
+
+import java.util.LinkedList;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.Sequence;
+
+/* Static class that builds midi sequences from an Info
+ * without using JavaFX, so the same code can be used by
+ * the GUI and by the command line tools.
+ */
+public class Engine {
+
+	// Variables for readability and functionality
+	final static long resolution = 960;
+	final static int rest = -1;
+	final static long triplet = -2;
+
+	/* Method that takes the algorithm in the info and calls it
+	 * 1 - Equal probability of note/keys/length. Single notes only.
+	 * 2 - Equal probability of note/keys/length. Chords allowed.
+	 * 3 - Biased probability of notes so that the note switches keys
+	 *     when it reaches common note to another key. Single notes only
+	 * 4 - Same as algorithm 3, but with chords allowed
+	 * 5 - Markov chain of the notes and lengths, so every note depends
+	 *     on the notes before it
+	 * 6 - Notes and lengths that follow the last ones in an index of
+	 *     midi files (see NgramIndex)
+	 * @return The time that the last note ends
+	 */
+	public static long algorithm(Info info) {
+
+		// Switch case statement that calls correct method depending on
+		// the algorithm in the info
+		switch(info.getAlgorithm()) {
+			case 1: return Algorithm.one(info);
+			case 2: return Algorithm.two(info);
+			case 3: return Algorithm.three(info);
+			case 4: return Algorithm.four(info);
+			case 5: return Algorithm.five(info);
+			case 6: return Algorithm.six(info);
+			default: return Algorithm.one(info);
+		}
+
+	}
+
+	/* Returns the seed of the stream with the index, so that every job,
+	 * track or segment gets its own random numbers that only depend on
+	 * the base seed and the index, no matter which thread runs it.
+	 * Uses the mixing function of SplitMix64
+	 */
+	public static long seed(long base, long index) {
+
+		long z = base + (index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+
+		return z ^ (z >>> 31);
+
+	}
+
+	/* Adds the notes to the event buffer of the info from the start of
+	 * the track, without a track. The bars are generated in segments on
+	 * every core (see Segments)
+	 * @return The time that the last note ends
+	 */
+	public static long generate(Info info) {
+		return Segments.generate(info);
+	}
+
+	/* Builds a sequence of random music based on the info
+	 * @param info Info with the bars, tempo, instrument, algorithm and lists
+	 * @return Sequence with one track that contains the music
+	 */
+	public static Sequence build(Info info) throws InvalidMidiDataException {
+		return sequence(info, generate(info));
+	}
+
+	/* Builds a sequence from the notes that were already generated
+	 * @param info Info with the tempo, instrument and event buffer
+	 * @param time The time that the last note ends
+	 * @return Sequence with one track that contains the music
+	 */
+	public static Sequence sequence(Info info, long time) throws InvalidMidiDataException {
+		return sequence(time, info);
+	}
+
+	/* Builds a sequence with one track for every part, each on the
+	 * channel of its part
+	 * @param time The time that the last note of all the parts ends
+	 * @param parts Info of the parts, with their events already generated
+	 * @return Sequence with one track for every part (type 1)
+	 */
+	public static Sequence sequence(long time, Info... parts) throws InvalidMidiDataException {
+
+		// Creating sequence, measured in 960 ticks per quarter note
+		Sequence seq = new Sequence(Sequence.PPQ, (int) resolution);
+
+		// Starting every track with the shared events of its tempo,
+		// instrument and channel, then adding the notes and the end
+		for(Info info : parts) {
+			SequenceTemplate.get(info.getTempo(), info.getInstrument(), info.getChannel())
+					.track(seq, info.getEvents(), time + resolution);
+		}
+
+		return seq;
+
+	}
+
+	/* Adds the dotted, double dotted and triplet lengths to the lists
+	 * of note/rest lengths depending on the options chosen
+	 */
+	public static void options(LinkedList<Long> note_dur, LinkedList<Long> rest_dur,
+			boolean dotted, boolean doubleDotted, boolean triplets) {
+
+		// Checking if dotted notes are allowed
+		if(dotted) {
+
+			// Holds the value of the dotted note
+			long dotVal = 0;
+
+			// Getting size of list
+			int size = note_dur.size();
+
+			// Adding dotted notes of all the notes in the list to the list
+			for(int i = 0; i < size; i++) {
+				dotVal = note_dur.get(i).intValue();
+				dotVal = dotVal + (dotVal / 2);
+				note_dur.add(Long.valueOf(dotVal));
+			}
+
+			// Getting size of list
+			size = rest_dur.size();
+
+			// Adding dotted rests of all the rests in the list to the list
+			for(int i = 0; i < size; i++) {
+				dotVal = rest_dur.get(i).intValue();
+				dotVal += (dotVal / 2);
+				rest_dur.add(Long.valueOf(dotVal));
+			}
+
+		}
+
+		// Checking if double dotted notes are allowed
+		if(doubleDotted) {
+
+			// Holds the value of the double dotted note
+			long dotVal = 0;
+
+			// Getting size of list
+			int size = note_dur.size();
+
+			// Adding double dotted notes of all the notes in the list to the list
+			for(int i = 0; i < size; i++) {
+				dotVal = note_dur.get(i).intValue();
+				dotVal += (dotVal / 2) + (dotVal / 4);
+				note_dur.add(Long.valueOf(dotVal));
+			}
+
+			// Getting size of list
+			size = rest_dur.size();
+
+			// Adding double dotted rests of all the rests in the list to the list
+			for(int i = 0; i < size; i++) {
+				dotVal = rest_dur.get(i).intValue();
+				dotVal += (dotVal / 2) + (dotVal / 4);
+				rest_dur.add(Long.valueOf(dotVal));
+			}
+
+		}
+
+		// Adding value to list that indicates a triplet if the list is not empty
+		if(triplets && !note_dur.isEmpty()) {
+			note_dur.add(Long.valueOf(triplet));
+		}
+
+	}
+
+	/* Checks if the linked lists are empty and sets
+	 * them to default values if they are empty so that
+	 * when the track is built, it doesn't loop infinitely
+	 */
+	public static void check(LinkedList<Integer> note, LinkedList<Integer> key,
+			LinkedList<Integer> octave, LinkedList<Long> note_dur, LinkedList<Long> rest_dur) {
+
+		// Sets valid notes to default scale (harmonic minor)
+		// if the list is empty
+		if(note.isEmpty()) {
+			note.add(Integer.valueOf(0));  // C
+			note.add(Integer.valueOf(2));  // D
+			note.add(Integer.valueOf(3));  // Eb
+			note.add(Integer.valueOf(5));  // F
+			note.add(Integer.valueOf(7));  // G
+			note.add(Integer.valueOf(8));  // Ab
+			note.add(Integer.valueOf(11)); // B
+		}
+
+		// Sets valid keys to default key (F#) if the list is empty
+		if(key.isEmpty()){
+			key.add(Integer.valueOf(6)); // 6 = F#
+		}
+
+		// Sets octaves to default range (3-4) if the list is empty
+		if(octave.isEmpty()) {
+			octave.add(Integer.valueOf(3));
+			octave.add(Integer.valueOf(4));
+		}
+
+		// Sets valid note length to default note lengths
+		// (1/16, 1/8) if the list is empty
+		if(note_dur.isEmpty()){
+			note_dur.add(Long.valueOf(240));  // 240 = 1/16
+			note_dur.add(Long.valueOf(480));  // 480 = 1/8
+		}
+
+		// Adds a value (-1) to the valid note list if
+		// there is at least one rest length
+		if(!rest_dur.isEmpty()){
+			note.add(Integer.valueOf(rest)); // -1 = rest
+		}
+
+	}
+
+}
@@ -0,0 +1,202 @@
+package rmg;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/* Static class that turns the info of a track into the parts of a
+ * small band, each with its own algorithm, instrument and midi channel:
+ *
+ * 0 - Melody, with the algorithm, instrument and spec of the info
+ * 1 - Chords, algorithm 4 on strings with long notes
+ * 2 - Bass, algorithm 5 on a bass in the low octaves
+ * 3 - Percussion, algorithm 1 on the drum kit of channel 10
+ *
+ * The parts share the notes and keys of the info but not their random
+ * numbers, every part has its own seed derived from the seed of the
+ * info, and they are generated at the same time on a fork join pool,
+ * so four parts take about as long as the slowest part on its own.
+ */
+public class Ensemble {
+
+	// Variables for readability and functionality
+	final static int rest = -1;
+	final static long whole = Engine.resolution * 4;
+	final static int percussion = 9;
+
+	// Instruments of the parts that are not the melody
+	final static int strings = 48;
+	final static int bass = 33;
+
+	// Drums of the percussion part (kick, snare, closed hi-hat,
+	// open hi-hat, crash) and how often each is played
+	final static Integer[] drums = {36, 38, 42, 46, 49};
+	final static Double[] drum_weights = {3.0, 2.0, 6.0, 1.0, 0.3};
+
+	/* Returns the parts of the band for the info
+	 * @param info Info of the melody, with the spec, seed and bars
+	 * @return Info of every part, without events
+	 */
+	public static Info[] parts(Info info) {
+
+		Spec spec = info.getSpec();
+		List<Integer> notes = new ArrayList<>();
+		for(int n : spec.getNote()) {
+			if(n != rest) {
+				notes.add(n);
+			}
+		}
+		List<Integer> keys = ints(spec.getKey());
+
+		// Melody, the info as it is on the first channel
+		Info melody = part(info, 0, info.getAlgorithm(), info.getInstrument(), spec);
+
+		// Chords of 3 or 4 notes that last half a bar or a bar, every
+		// other size has a weight of 0 (sizes without one get a weight of 1)
+		Weights chordWeights = new Weights();
+		chordWeights.setChord(Arrays.asList(0.0, 0.0, 4.0, 3.0, 0.0, 0.0, 0.0, 0.0, 0.0, 0.0));
+		Info chords = part(info, 1, 4, strings, new Spec(notes, keys, Arrays.asList(3, 4),
+				Arrays.asList(whole / 2, whole), new ArrayList<Long>(), chordWeights));
+
+		// Bass line in the low octaves
+		Info low = part(info, 2, 5, bass, new Spec(notes, keys, Arrays.asList(2, 3),
+				Arrays.asList(whole / 8, whole / 4, whole / 2), new ArrayList<Long>()));
+
+		// Drums, the notes are the drums so there is only one key and octave
+		List<Integer> kit = new ArrayList<>(Arrays.asList(drums));
+		kit.add(rest);
+		List<Double> kitWeights = new ArrayList<>(Arrays.asList(drum_weights));
+		kitWeights.add(1.0);
+		Weights drumWeights = new Weights();
+		drumWeights.setNote(kitWeights);
+		Info drumPart = part(info, percussion, 1, 0, new Spec(kit, Arrays.asList(0), Arrays.asList(0),
+				Arrays.asList(whole / 16, whole / 8), Arrays.asList(whole / 8), drumWeights));
+
+		return new Info[] {melody, chords, low, drumPart};
+
+	}
+
+	/* Adds the notes of every part from the start of the track
+	 * at the same time
+	 * @return The time that the last note of all the parts ends
+	 */
+	public static long generate(Info... parts) {
+		return run(true, parts);
+	}
+
+	/* Adds the bars of every part after where it stopped, at the same time
+	 * @return The time that the last note of all the parts ends
+	 */
+	public static long algorithm(Info... parts) {
+		return run(false, parts);
+	}
+
+	/* Adds the notes of every part to its event store, a few segments
+	 * at a time, moving the events out of the event buffers after every
+	 * few segments (see Segments). Only the notes of those segments are
+	 * kept on the heap, so the memory does not grow with the number of
+	 * bars. Parts without a store get a new one, which the caller must close
+	 * @return The time that the last note of all the parts ends
+	 */
+	public static long store(Info... parts) throws IOException {
+		return Segments.store(parts);
+	}
+
+	/* Runs the parts in the common pool, or in the pool of the caller
+	 * if it is already running in one
+	 */
+	private static long run(boolean start, Info[] parts) {
+
+		long[] times = new long[parts.length];
+		Job job = new Job(parts, times, start, 0, parts.length);
+
+		if(ForkJoinTask.inForkJoinPool()) {
+			job.invoke();
+		}
+		else {
+			ForkJoinPool.commonPool().invoke(job);
+		}
+
+		long time = 0;
+		for(long t : times) {
+			time = Math.max(time, t);
+		}
+
+		return time;
+
+	}
+
+	/* Task that generates the parts in the range [from, to), splitting
+	 * the range in half until there is only one part left
+	 */
+	static class Job extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Info[] parts;
+		private final long[] times;
+		private final boolean start;
+		private final int from;
+		private final int to;
+
+		Job(Info[] parts, long[] times, boolean start, int from, int to) {
+			this.parts = parts;
+			this.times = times;
+			this.start = start;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			// Nothing to do if the range is empty
+			if(from >= to) {
+				return;
+			}
+
+			// Splitting the range if there is more than one part
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Job(parts, times, start, from, mid), new Job(parts, times, start, mid, to));
+				return;
+			}
+
+			// Adding the notes of the part
+			times[from] = start ? Engine.generate(parts[from]) : Engine.algorithm(parts[from]);
+
+		}
+
+	}
+
+	/* Returns a part with the bars, tempo and seed of the info */
+	private static Info part(Info info, int channel, int algorithm, int instrument, Spec spec) {
+
+		Info part = info.copy();
+		part.setChannel(channel);
+		part.setAlgorithm(algorithm);
+		part.setInstrument(instrument);
+		part.setSpec(spec);
+		part.setSeed(channel == 0 ? info.getSeed() : Engine.seed(info.getSeed(), channel));
+
+		return part;
+
+	}
+
+	/* Copies an array of ints into a list */
+	private static List<Integer> ints(int[] array) {
+
+		List<Integer> list = new ArrayList<>();
+		for(int value : array) {
+			list.add(value);
+		}
+
+		return list;
+
+	}
+
+}
@@ -0,0 +1,148 @@
+package rmg;
+
+import java.util.Arrays;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+/* Growable buffer of short midi events that the algorithms write
+ * into. Every event is packed into one long so that adding a note
+ * does not create any objects:
+ *
+ *   bits 24-63  tick
+ *   bits 16-23  status (including the channel)
+ *   bits  8-15  first data byte
+ *   bits  0-7   second data byte
+ *
+ * Because the tick is in the high bits, sorting the array sorts
+ * the events by time, with note offs before note ons at the same tick.
+ * A Track is only built from the buffer when it is needed.
+ */
+public final class EventBuffer implements EventSource {
+
+	// Variables for readability and functionality
+	final static int note_on = 0x90;
+	final static int note_off = 0x80;
+	final static int velocity_on = 0x60;
+	final static int velocity_off = 0x40;
+	final static int default_size = 1024;
+
+	private long[] events;
+	private int size;
+
+	/* Constructor */
+	public EventBuffer() {
+		this(default_size);
+	}
+
+	/* Constructor with the starting capacity of the buffer */
+	public EventBuffer(int capacity) {
+		events = new long[Math.max(capacity, 16)];
+		size = 0;
+	}
+
+	/* Packs an event into a long */
+	public static long pack(long tick, int status, int data1, int data2) {
+		return (tick << 24) | ((status & 0xFF) << 16) | ((data1 & 0xFF) << 8) | (data2 & 0xFF);
+	}
+
+	/* Getters for the parts of a packed event */
+
+	public static long tick(long event) {
+		return event >>> 24;
+	}
+
+	public static int status(long event) {
+		return (int) (event >>> 16) & 0xFF;
+	}
+
+	public static int data1(long event) {
+		return (int) (event >>> 8) & 0xFF;
+	}
+
+	public static int data2(long event) {
+		return (int) event & 0xFF;
+	}
+
+	/* Adds an event to the buffer, growing it if it is full */
+	public void add(long tick, int status, int data1, int data2) {
+		if(size == events.length) {
+			events = Arrays.copyOf(events, size * 2);
+		}
+		events[size++] = pack(tick, status, data1, data2);
+	}
+
+	/* Adds a packed event to the buffer */
+	public void add(long event) {
+		if(size == events.length) {
+			events = Arrays.copyOf(events, size * 2);
+		}
+		events[size++] = event;
+	}
+
+	/* Adds a note on and a note off event for a note, one right after
+	 * the other, so the notes of an unsorted buffer are pairs of events
+	 * (Segments relies on this to cut the notes of a segment). A note
+	 * lasts at least one tick, a note off at the time of its note on
+	 * would be sorted before it and leave the note playing
+	 */
+	public void note(int channel, int note, long time, long length) {
+		add(time, note_on | channel, note, velocity_on);
+		add(time + Math.max(length, 1), note_off | channel, note, velocity_off);
+	}
+
+	/* Returns the packed event at the index */
+	public long get(int i) {
+		return events[i];
+	}
+
+	/* Returns the number of events in the buffer */
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public long count() {
+		return size;
+	}
+
+	@Override
+	public long event(long index) {
+		return events[(int) index];
+	}
+
+	/* Empties the buffer but keeps the array so it can be reused */
+	public void clear() {
+		size = 0;
+	}
+
+	/* Removes the first events from the buffer, keeping the rest */
+	public void remove(int count) {
+		System.arraycopy(events, count, events, 0, size - count);
+		size -= count;
+	}
+
+	/* Sorts the events by time */
+	public void sort() {
+		Arrays.sort(events, 0, size);
+	}
+
+	/* Sorts the events and adds them to the track. This is the
+	 * only place where ShortMessages and MidiEvents are created
+	 */
+	public void toTrack(Track track) throws InvalidMidiDataException {
+
+		sort();
+
+		for(int i = 0; i < size; i++) {
+			long event = events[i];
+			ShortMessage sm = new ShortMessage();
+			sm.setMessage(status(event), data1(event), data2(event));
+			track.add(new MidiEvent(sm, tick(event)));
+		}
+
+	}
+
+}
@@ -0,0 +1,89 @@
+package rmg;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Lock free queue of timed events with exactly one thread adding
+ * events and one thread taking them. Every slot holds the time of the
+ * event in microseconds and the packed event (see EventBuffer). The
+ * producer only writes the tail and the consumer only writes the head,
+ * so neither side ever waits on a lock.
+ */
+public final class EventQueue {
+
+	private final long[] times;
+	private final long[] events;
+	private final int mask;
+
+	// Next slot to take and next slot to fill
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	// Copies of the other side's counter, so it is read less often
+	private long cachedHead;
+	private long cachedTail;
+
+	/* Constructor, the capacity is rounded up to a power of 2 */
+	public EventQueue(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+		times = new long[size];
+		events = new long[size];
+		mask = size - 1;
+	}
+
+	/* Adds an event, called by the producer only
+	 * @return false if the queue is full
+	 */
+	public boolean offer(long time, long event) {
+
+		long t = tail.get();
+
+		// Checking if the queue is full, reading the head only if it looks full
+		if(t - cachedHead > mask) {
+			cachedHead = head.get();
+			if(t - cachedHead > mask) {
+				return false;
+			}
+		}
+
+		int i = (int) t & mask;
+		times[i] = time;
+		events[i] = event;
+		tail.lazySet(t + 1);
+
+		return true;
+
+	}
+
+	/* Returns true if there is an event to take, called by the consumer only */
+	public boolean available() {
+
+		long h = head.get();
+		if(h == cachedTail) {
+			cachedTail = tail.get();
+		}
+
+		return h != cachedTail;
+
+	}
+
+	/* Returns the time of the next event, only valid if available() is true */
+	public long peekTime() {
+		return times[(int) head.get() & mask];
+	}
+
+	/* Returns the next event, only valid if available() is true */
+	public long peekEvent() {
+		return events[(int) head.get() & mask];
+	}
+
+	/* Removes the next event, called by the consumer only */
+	public void remove() {
+		head.lazySet(head.get() + 1);
+	}
+
+	/* Returns the number of events in the queue */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+}
@@ -0,0 +1,17 @@
+package rmg;
+
+/* Events of a part that can be read in order by the midi writer and
+ * the players, no matter where they are kept. The events are packed
+ * the way EventBuffer packs them and must be sorted before they are
+ * read. An EventBuffer keeps them on the heap, an EventStore keeps
+ * them in a file so a track can be longer than the memory.
+ */
+public interface EventSource {
+
+	/* Returns the number of events */
+	long count();
+
+	/* Returns the packed event at the index */
+	long event(long index);
+
+}
@@ -0,0 +1,202 @@
+package rmg;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* Sorted events of a part that are kept in a temporary file instead of
+ * on the heap, so the length of a track is only limited by the disk.
+ * Events are added in order into a direct buffer of one chunk, which
+ * is written to the end of the file when it is full. They are read
+ * back through a second direct buffer of one chunk, the window, which
+ * is filled again from the file when it is moved along it. Nothing is
+ * mapped, so a very long track does not use up the mappings of the
+ * process, and the memory that is used only depends on the size of a
+ * chunk and not on the number of events.
+ *
+ * The algorithms add their notes to an EventBuffer, and every event
+ * before the time where the algorithm stopped can no longer change
+ * order, so those events are moved into the store (see drain). Only
+ * one thread can add or read events at a time. The file is deleted
+ * when the store is closed.
+ */
+public final class EventStore implements EventSource, AutoCloseable {
+
+	// Variables for readability and functionality
+	final static int default_chunk = 1 << 16;
+	final static int event_bytes = Long.BYTES;
+
+	private final int chunk;
+	private final FileChannel channel;
+	private final ByteBuffer tail;
+	private final ByteBuffer window;
+
+	// Number of events in the file, and the last event that was added
+	private long spilled;
+	private long last;
+
+	// Events of the file that are in the window, [from, to)
+	private long from;
+	private long to;
+
+	/* Constructor */
+	public EventStore() throws IOException {
+		this(default_chunk);
+	}
+
+	/* Constructor with the number of events in a chunk */
+	public EventStore(int chunk) throws IOException {
+
+		this.chunk = Math.max(chunk, 16);
+		tail = ByteBuffer.allocateDirect(this.chunk * event_bytes);
+		window = ByteBuffer.allocateDirect(this.chunk * event_bytes);
+
+		Path file = Files.createTempFile("rmg", ".events");
+		channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+
+	}
+
+	/* Adds an event, it can not be before the last event that was added */
+	public void add(long event) {
+
+		if(event < last) {
+			throw new IllegalArgumentException("Events must be added in order");
+		}
+		last = event;
+
+		if(!tail.hasRemaining()) {
+			spill();
+		}
+		tail.putLong(event);
+
+	}
+
+	/* Moves the events of the buffer that are before the time into
+	 * the store, keeping the rest in the buffer
+	 * @param events Buffer that the algorithm adds the notes to
+	 * @param before Time where the algorithm stopped
+	 */
+	public void drain(EventBuffer events, long before) {
+
+		events.sort();
+
+		int count = 0;
+		while(count < events.size() && EventBuffer.tick(events.get(count)) < before) {
+			add(events.get(count++));
+		}
+		events.remove(count);
+
+	}
+
+	/* Moves all the events of the buffer into the store */
+	public void drain(EventBuffer events) {
+
+		events.sort();
+
+		for(int i = 0; i < events.size(); i++) {
+			add(events.get(i));
+		}
+		events.clear();
+
+	}
+
+	@Override
+	public long count() {
+		return spilled + tail.position() / event_bytes;
+	}
+
+	@Override
+	public long event(long index) {
+
+		// Reading the events that are not in the file yet from the tail
+		if(index >= spilled) {
+			return tail.getLong((int) (index - spilled) * event_bytes);
+		}
+
+		// Moving the window to the chunk of the event
+		if(index < from || index >= to) {
+			read(index);
+		}
+
+		return window.getLong((int) (index - from) * event_bytes);
+
+	}
+
+	/* Removes all the events so the store can be used for another track */
+	public void clear() {
+
+		try {
+			channel.truncate(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		tail.clear();
+		spilled = 0;
+		last = 0;
+		from = 0;
+		to = 0;
+
+	}
+
+	/* Returns the number of events in a chunk */
+	public int getChunk() {
+		return chunk;
+	}
+
+	/* Closes and deletes the file */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/* Writes the tail to the end of the file */
+	private void spill() {
+
+		tail.flip();
+		long position = spilled * event_bytes;
+		spilled += tail.remaining() / event_bytes;
+
+		try {
+			while(tail.hasRemaining()) {
+				position += channel.write(tail, position);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		tail.clear();
+
+	}
+
+	/* Reads the chunk of the file that has the event into the window */
+	private void read(long index) {
+
+		from = index / chunk * chunk;
+		to = Math.min(from + chunk, spilled);
+
+		window.clear();
+		window.limit((int) (to - from) * event_bytes);
+		long position = from * event_bytes;
+
+		try {
+			while(window.hasRemaining()) {
+				if(channel.read(window, position + window.position()) < 0) {
+					throw new EOFException("Events are missing from the file");
+				}
+			}
+		} catch (IOException e) {
+			from = 0;
+			to = 0;
+			throw new UncheckedIOException(e);
+		}
+
+	}
+
+}
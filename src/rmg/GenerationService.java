@@ -0,0 +1,94 @@
+package rmg;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javafx.concurrent.Service;
+import javafx.concurrent.Task;
+
+import javax.sound.midi.Sequence;
+
+/* Service that builds the sequence of a track on a background thread,
+ * so the window keeps drawing while a long track is generated.
+ * The notes are added a few segments of bars at a time (see Segments),
+ * so the progress can be shown by bar and the build can be cancelled
+ * between two groups of segments. The result is only given
+ * to the Application thread once it is complete, so the track that is
+ * played or saved is never half built. A track can have many parts
+ * (see Ensemble), the bars of the parts are added at the same time.
+ */
+public class GenerationService extends Service<Sequence> {
+
+	// Thread that runs the builds, one at a time
+	private final static ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "RMG generation");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private Info[] parts;
+
+	/* Constructor */
+	public GenerationService() {
+		setExecutor(executor);
+	}
+
+	/* Returns the info of the parts of the track that is built */
+	public Info[] getParts() {
+		return parts;
+	}
+
+	/* Sets the info of the parts of the next track that is built.
+	 * They must not be changed while the service is running
+	 */
+	public void setParts(Info... parts) {
+		this.parts = parts;
+	}
+
+	@Override
+	protected Task<Sequence> createTask() {
+
+		// Keeping the parts of this build, in case others are set
+		final Info[] track = parts;
+
+		return new Task<Sequence>() {
+
+			@Override
+			protected Sequence call() throws Exception {
+
+				int bars = track[0].getBars();
+
+				// Adding the segments of the bars a few at a time from the
+				// seeds of the parts, stopping if cancelled
+				Segments.Builder builder = new Segments.Builder(track);
+				int window = Segments.parallelism();
+				while(builder.hasNext()) {
+
+					if(isCancelled()) {
+						return null;
+					}
+
+					int done = builder.next(window);
+					updateProgress(done, bars);
+					updateMessage("Bar " + done + " of " + bars);
+
+				}
+				long time = builder.getTime();
+
+				// Printing what was generated if tracing is turned on
+				if(Trace.getLevel() != Trace.off) {
+					Trace.dump(System.out);
+					Trace.clear();
+				}
+
+				// Building the sequence from the notes
+				updateMessage("Building sequence");
+				return Engine.sequence(time, track);
+
+			}
+
+		};
+
+	}
+
+}
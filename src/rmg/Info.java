@@ -1,6 +1,7 @@
 package rmg;
 
-import java.util.LinkedList;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.sound.midi.Track;
 
@@ -10,22 +11,72 @@ import javax.sound.midi.Track;
 public class Info {
 	
 	private Track t;
+	private EventBuffer events;
+	private EventStore store;
 	private int bars;
-	private LinkedList<Integer> note;
-	private LinkedList<Integer> key;
-	private LinkedList<Integer> octave;
-	private LinkedList<Long> note_dur;
-	private LinkedList<Long> rest_dur;
+	private int tempo;
+	private int instrument;
+	private int channel;
+	private int algorithm;
+	private Spec spec;
+	private long seed;
+	private int order;
+	private NgramIndex index;
+
+	// Where the algorithm stopped, so more bars can be added later
+	private long time;
+	private long end;
+	private SplittableRandom random;
+	private int keyVal;
+	private int context;
+	private int pitch;
+	private long history;
 	
 	/* Constructor */
 	public Info() {
 		t = null;
+		events = null;
+		store = null;
 		bars = 0;
-		note = null;
-		key = null;
-		octave = null;
-		note_dur = null;
-		rest_dur = null;
+		tempo = 120;
+		instrument = 0;
+		channel = 0;
+		algorithm = 1;
+		spec = null;
+		seed = ThreadLocalRandom.current().nextLong();
+		order = 2;
+		index = null;
+		reset();
+	}
+
+	/* Moves the info back to the start of the track, so the
+	 * algorithm starts again from the seed
+	 */
+	public void reset() {
+		time = 0;
+		end = 0;
+		random = null;
+		keyVal = -1;
+		context = -1;
+		pitch = -1;
+		history = 0;
+	}
+
+	/* Returns a copy of the info without the track, so the
+	 * same spec can be used to build many tracks at once
+	 */
+	public Info copy() {
+		Info info = new Info();
+		info.bars = bars;
+		info.tempo = tempo;
+		info.instrument = instrument;
+		info.channel = channel;
+		info.algorithm = algorithm;
+		info.spec = spec;
+		info.seed = seed;
+		info.order = order;
+		info.index = index;
+		return info;
 	}
 
 	/* Getters and Setters for fields*/
@@ -38,6 +89,29 @@ public class Info {
 		this.t = t;
 	}
 
+	public EventBuffer getEvents() {
+		return events;
+	}
+
+	public void setEvents(EventBuffer events) {
+		this.events = events;
+	}
+
+	public EventStore getStore() {
+		return store;
+	}
+
+	public void setStore(EventStore store) {
+		this.store = store;
+	}
+
+	/* Returns where the events of the track are read from, the store
+	 * if the track was generated into one, otherwise the event buffer
+	 */
+	public EventSource getSource() {
+		return store != null ? store : events;
+	}
+
 	public int getBars() {
 		return bars;
 	}
@@ -46,44 +120,124 @@ public class Info {
 		this.bars = bars;
 	}
 
-	public LinkedList<Integer> getNote() {
-		return note;
+	public int getTempo() {
+		return tempo;
+	}
+
+	public void setTempo(int tempo) {
+		this.tempo = tempo;
+	}
+
+	public int getInstrument() {
+		return instrument;
+	}
+
+	public void setInstrument(int instrument) {
+		this.instrument = instrument;
+	}
+
+	public int getChannel() {
+		return channel;
+	}
+
+	public void setChannel(int channel) {
+		this.channel = channel;
+	}
+
+	public int getAlgorithm() {
+		return algorithm;
+	}
+
+	public void setAlgorithm(int algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public void setTime(long time) {
+		this.time = time;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public void setEnd(long end) {
+		this.end = end;
+	}
+
+	public SplittableRandom getRandom() {
+		return random;
+	}
+
+	public void setRandom(SplittableRandom random) {
+		this.random = random;
+	}
+
+	public int getKeyVal() {
+		return keyVal;
+	}
+
+	public void setKeyVal(int keyVal) {
+		this.keyVal = keyVal;
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	public void setOrder(int order) {
+		this.order = order;
+	}
+
+	public int getContext() {
+		return context;
 	}
 
-	public void setNote(LinkedList<Integer> note) {
-		this.note = note;
+	public void setContext(int context) {
+		this.context = context;
 	}
 
-	public LinkedList<Integer> getKey() {
-		return key;
+	public int getPitch() {
+		return pitch;
 	}
 
-	public void setKey(LinkedList<Integer> key) {
-		this.key = key;
+	public void setPitch(int pitch) {
+		this.pitch = pitch;
 	}
 
-	public LinkedList<Integer> getOctave() {
-		return octave;
+	public long getHistory() {
+		return history;
 	}
 
-	public void setOctave(LinkedList<Integer> octave) {
-		this.octave = octave;
+	public void setHistory(long history) {
+		this.history = history;
 	}
 
-	public LinkedList<Long> getNote_dur() {
-		return note_dur;
+	public NgramIndex getIndex() {
+		return index;
 	}
 
-	public void setNote_dur(LinkedList<Long> note_dur) {
-		this.note_dur = note_dur;
+	public void setIndex(NgramIndex index) {
+		this.index = index;
 	}
 
-	public LinkedList<Long> getRest_dur() {
-		return rest_dur;
+	public Spec getSpec() {
+		return spec;
 	}
 
-	public void setRest_dur(LinkedList<Long> rest_dur) {
-		this.rest_dur = rest_dur;
+	public void setSpec(Spec spec) {
+		this.spec = spec;
 	}
 
 }
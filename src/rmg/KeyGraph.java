@@ -0,0 +1,122 @@
+package rmg;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Immutable graph of the keys a track can change to. For every pitch
+ * class it has the valid keys whose scale contains it, as a 12 bit
+ * mask and as an array, so an algorithm that plays a note can pick
+ * the next key with one random number.
+ *
+ * The graph only depends on the scale and the valid keys, so it is
+ * built once for each pair and kept in a small cache that is shared
+ * by every thread, instead of being built for every track.
+ */
+public final class KeyGraph {
+
+	// Variables for readability and functionality
+	final static int num_notes = 12;
+	final static int max_cached = 64;
+
+	// Graphs that were built, the least recently used is removed first
+	private final static Map<Integer, KeyGraph> cache = Collections.synchronizedMap(
+			new LinkedHashMap<Integer, KeyGraph>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, KeyGraph> eldest) {
+					return size() > max_cached;
+				}
+			});
+
+	private final int scaleMask;
+	private final int keyMask;
+
+	// Keys that contain each pitch class, as a mask and as key values
+	private final int[] containing;
+	private final int[][] candidates;
+
+	/* Constructor
+	 * @param scaleMask Pitch classes of the scale in the key of C
+	 * @param keyMask Valid keys
+	 */
+	private KeyGraph(int scaleMask, int keyMask) {
+
+		this.scaleMask = scaleMask;
+		this.keyMask = keyMask;
+
+		// Adding every valid key to the pitch classes of its scale
+		containing = new int[num_notes];
+		for(int k = 0; k < num_notes; k++) {
+			if((keyMask & (1 << k)) != 0) {
+				int inKey = Spec.rotate(scaleMask, k);
+				for(int pc = 0; pc < num_notes; pc++) {
+					if((inKey & (1 << pc)) != 0) {
+						containing[pc] |= 1 << k;
+					}
+				}
+			}
+		}
+
+		// Listing the keys of every pitch class
+		candidates = new int[num_notes][];
+		for(int pc = 0; pc < num_notes; pc++) {
+			candidates[pc] = new int[Integer.bitCount(containing[pc])];
+			int i = 0;
+			for(int bits = containing[pc]; bits != 0; bits &= bits - 1) {
+				candidates[pc][i++] = Integer.numberOfTrailingZeros(bits);
+			}
+		}
+
+	}
+
+	/* Returns the graph of the scale and keys, building it only if
+	 * it is not in the cache
+	 */
+	public static KeyGraph get(int scaleMask, int keyMask) {
+
+		Integer id = (scaleMask & 0xFFF) << num_notes | (keyMask & 0xFFF);
+		KeyGraph graph = cache.get(id);
+
+		if(graph == null) {
+			graph = new KeyGraph(scaleMask & 0xFFF, keyMask & 0xFFF);
+			cache.put(id, graph);
+		}
+
+		return graph;
+
+	}
+
+	/* Returns the mask of the keys that contain the pitch class */
+	public int keys(int pc) {
+		return containing[pc];
+	}
+
+	/* Returns the key values that contain the pitch class */
+	int[] candidates(int pc) {
+		return candidates[pc];
+	}
+
+	/* Returns the mask of the keys that contain every pitch class of
+	 * the chord, with an AND for each pitch class in the chord
+	 */
+	public int keysContaining(int chord) {
+
+		int keys = keyMask;
+		for(int bits = chord; bits != 0; bits &= bits - 1) {
+			keys &= containing[Integer.numberOfTrailingZeros(bits)];
+		}
+
+		return keys;
+
+	}
+
+	public int getScaleMask() {
+		return scaleMask;
+	}
+
+	public int getKeyMask() {
+		return keyMask;
+	}
+
+}
@@ -0,0 +1,99 @@
+package rmg;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/* Records times in nanoseconds and keeps the count, mean, standard
+ * deviation, maximum and a histogram with one bucket for every power
+ * of 2 microseconds, so percentiles can be estimated. Any number of
+ * threads can record at the same time without locking.
+ */
+public final class Latency {
+
+	// Number of buckets in the histogram
+	final static int buckets = 40;
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final LongAdder squares = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+	private final AtomicLongArray histogram = new AtomicLongArray(buckets);
+
+	/* Records a time in nanoseconds */
+	public void record(long nanos) {
+
+		long micros = Math.max(nanos, 0) / 1000;
+
+		count.increment();
+		sum.add(micros);
+		squares.add(micros * micros);
+		max.accumulateAndGet(micros, Math::max);
+		histogram.incrementAndGet(Math.min(64 - Long.numberOfLeadingZeros(micros), buckets - 1));
+
+	}
+
+	/* Returns the number of times recorded */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/* Returns the mean in microseconds */
+	public double getMean() {
+		long n = count.sum();
+		return n == 0 ? 0 : (double) sum.sum() / n;
+	}
+
+	/* Returns the standard deviation in microseconds */
+	public double getDeviation() {
+		long n = count.sum();
+		if(n == 0) {
+			return 0;
+		}
+		double mean = getMean();
+		return Math.sqrt(Math.max((double) squares.sum() / n - mean * mean, 0));
+	}
+
+	/* Returns the maximum in microseconds */
+	public long getMax() {
+		return max.get();
+	}
+
+	/* Returns the upper bound of the bucket that has the percentile
+	 * @param p Percentile between 0 and 100
+	 */
+	public long getPercentile(double p) {
+
+		long n = count.sum();
+		long target = (long) Math.ceil(n * p / 100.0);
+		long seen = 0;
+
+		for(int i = 0; i < buckets; i++) {
+			seen += histogram.get(i);
+			if(seen >= target && seen > 0) {
+				return i == 0 ? 0 : 1L << i;
+			}
+		}
+
+		return getMax();
+
+	}
+
+	/* Empties the statistics */
+	public void reset() {
+		count.reset();
+		sum.reset();
+		squares.reset();
+		max.set(0);
+		for(int i = 0; i < buckets; i++) {
+			histogram.set(i, 0);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d mean=%.1fus stddev=%.1fus p50<=%dus p99<=%dus max=%dus",
+				getCount(), getMean(), getDeviation(), getPercentile(50), getPercentile(99), getMax());
+	}
+
+}
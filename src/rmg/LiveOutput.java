@@ -0,0 +1,268 @@
+package rmg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Track;
+
+/* Sends timed events straight to a Receiver without a Sequencer.
+ * The thread that generates the music adds the events to a lock free
+ * queue, and a high priority thread takes them out and sends each one
+ * when it is due. The thread sleeps until shortly before the event and
+ * then spins, and if the receiver belongs to a device with a clock the
+ * event is also given its time in microseconds on that clock.
+ *
+ * How late every event was sent is recorded, so the mean lateness and
+ * the jitter (its standard deviation) can be compared with a Sequencer:
+ *
+ * Usage: java -cp RMG.jar rmg.LiveOutput [-synth] [track options]
+ */
+public final class LiveOutput implements Runnable {
+
+	// Variables for readability and functionality
+	final static int default_capacity = 1 << 14;
+	final static long spin = 200000;
+	final static long resolution = 960;
+	final static int microseconds = 60000000;
+
+	private final Receiver receiver;
+	private final MidiDevice device;
+	private final EventQueue queue;
+	private final Latency lateness = new Latency();
+
+	private volatile boolean running;
+	private volatile long start;
+	private long offset;
+	private Thread thread;
+
+	/* Constructor
+	 * @param receiver Receiver that the events are sent to
+	 * @param device Device of the receiver, or null if it has no clock
+	 */
+	public LiveOutput(Receiver receiver, MidiDevice device) {
+		this(receiver, device, default_capacity);
+	}
+
+	/* Constructor with the capacity of the queue */
+	public LiveOutput(Receiver receiver, MidiDevice device, int capacity) {
+		this.receiver = receiver;
+		this.device = device;
+		this.queue = new EventQueue(capacity);
+	}
+
+	/* Starts the clock and the thread that sends the events */
+	public synchronized void start() {
+
+		if(running) {
+			return;
+		}
+
+		// Getting the clock of the device, if it has one
+		offset = device == null ? -1 : device.getMicrosecondPosition();
+		start = System.nanoTime();
+		running = true;
+
+		thread = new Thread(this, "RMG live output");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+
+	}
+
+	/* Stops the thread, dropping the events that were not sent */
+	public synchronized void stop() {
+
+		if(!running) {
+			return;
+		}
+
+		running = false;
+		LockSupport.unpark(thread);
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+	}
+
+	/* Returns the microseconds since the output was started */
+	public long now() {
+		return (System.nanoTime() - start) / 1000;
+	}
+
+	/* Returns the statistics of how late the events were sent */
+	public Latency getLateness() {
+		return lateness;
+	}
+
+	/* Adds an event that will be sent at the time, waiting if the
+	 * queue is full. Must only be called by one thread
+	 * @param micros Time since the output was started
+	 * @param event Event packed by EventBuffer
+	 */
+	public void schedule(long micros, long event) {
+		while(!queue.offer(micros, event) && running) {
+			LockSupport.parkNanos(spin);
+		}
+	}
+
+	/* Schedules the sorted events of a track in order and waits until
+	 * the last one was sent. Only the events in the queue are held at
+	 * any time, so a track of any length can be played from a store
+	 * @param source Events of the track
+	 * @param mpq Microseconds per quarter note
+	 * @param delay Microseconds after the start that the track starts
+	 */
+	public void play(EventSource source, long mpq, long delay) throws InterruptedException {
+
+		long count = source.count();
+		for(long i = 0; i < count && running; i++) {
+			long event = source.event(i);
+			schedule(EventBuffer.tick(event) * mpq / resolution + delay, event);
+		}
+
+		while(queue.size() > 0 && running) {
+			Thread.sleep(10);
+		}
+
+	}
+
+	@Override
+	public void run() {
+
+		while(running) {
+
+			// Waiting for an event
+			if(!queue.available()) {
+				LockSupport.parkNanos(spin);
+				continue;
+			}
+
+			// Sleeping until shortly before the event is due, then spinning
+			long due = start + queue.peekTime() * 1000;
+			long wait = due - System.nanoTime();
+			if(wait > spin) {
+				LockSupport.parkNanos(wait - spin);
+				continue;
+			}
+			while(System.nanoTime() < due) {
+				Thread.onSpinWait();
+			}
+
+			// Sending the event with its time on the device's clock
+			long event = queue.peekEvent();
+			queue.remove();
+			try {
+				ShortMessage sm = new ShortMessage();
+				sm.setMessage(EventBuffer.status(event), EventBuffer.data1(event), EventBuffer.data2(event));
+				receiver.send(sm, offset < 0 ? -1 : offset + (due - start) / 1000);
+			} catch (InvalidMidiDataException e) {
+				e.printStackTrace();
+			}
+			lateness.record(System.nanoTime() - due);
+
+		}
+
+	}
+
+	/* Plays the same track through a Sequencer and through the live
+	 * output and prints how late the events were for each
+	 */
+	public static void main(String[] args) throws Exception {
+
+		Options opts = Options.parse(args);
+		Info info = opts.info();
+		Engine.generate(info);
+		Sequence seq = Engine.build(info.copy());
+		long mpq = microseconds / info.getTempo();
+
+		// Sending the events to the synthesizer or only timing them
+		Synthesizer synth = null;
+		Receiver target = new Receiver() {
+			public void send(MidiMessage message, long timeStamp) {}
+			public void close() {}
+		};
+		if(opts.has("synth")) {
+			synth = MidiSystem.getSynthesizer();
+			synth.open();
+			target = synth.getReceiver();
+		}
+
+		// Playing through a Sequencer, recording when each message arrives
+		Sequencer sqr = MidiSystem.getSequencer(false);
+		sqr.open();
+		sqr.setSequence(seq);
+		final Receiver out = target;
+		final List<MidiMessage> messages = new ArrayList<>();
+		final List<Long> arrivals = new ArrayList<>();
+		sqr.getTransmitter().setReceiver(new Receiver() {
+			public void send(MidiMessage message, long timeStamp) {
+				arrivals.add(System.nanoTime());
+				out.send(message, -1);
+				messages.add(message);
+			}
+			public void close() {}
+		});
+		sqr.start();
+		while(sqr.isRunning()) {
+			Thread.sleep(10);
+		}
+		sqr.close();
+
+		// Matching the messages with the events of the track, and timing
+		// them from the first one so the start up of the Sequencer is not counted
+		Latency seqLateness = new Latency();
+		Track track = seq.getTracks()[0];
+		int i = 0;
+		long first = -1;
+		for(int m = 0; m < messages.size(); m++) {
+
+			// Looking for the message in the next few events of the track,
+			// skipping messages that the Sequencer added itself
+			int j = i;
+			while(j < Math.min(i + 16, track.size()) && !(track.get(j).getMessage() instanceof ShortMessage
+					&& Arrays.equals(track.get(j).getMessage().getMessage(), messages.get(m).getMessage()))) {
+				j++;
+			}
+			if(j >= Math.min(i + 16, track.size())) {
+				continue;
+			}
+			i = j + 1;
+
+			long expected = track.get(j).getTick() * mpq / resolution * 1000;
+			if(first < 0) {
+				first = arrivals.get(m) - expected;
+			}
+			seqLateness.record(arrivals.get(m) - first - expected);
+
+		}
+
+		// Playing through the live output
+		LiveOutput live = new LiveOutput(target, synth);
+		info.getEvents().sort();
+		live.start();
+		live.play(info.getSource(), mpq, 1000);
+		live.stop();
+
+		System.out.println("Sequencer:   " + seqLateness);
+		System.out.println("Live output: " + live.getLateness());
+
+		if(synth != null) {
+			synth.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,253 @@
+package rmg;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.WeakHashMap;
+
+/* Markov model of the notes of a spec, used by Algorithm.five. Every
+ * state is a note of the scale with a length, or a rest with a length,
+ * and the next state depends on the last states (the order of the model).
+ *
+ * The probabilities are not learned, they come from the weights of
+ * the spec and a few rules: intervals are weighted by the spec (steps
+ * are more likely than leaps unless it says otherwise), a length
+ * is likely to be repeated, and rests rarely follow rests. The older a
+ * state is, the less it counts. The contexts are numbered in base
+ * states, so the row of every context is one index in a dense array,
+ * and each row is an alias table so a step takes constant time. A row
+ * is only built the first time its context comes up.
+ *
+ * Models are shared by every track with the same spec and order.
+ */
+public final class Markov {
+
+	// Variables for readability and functionality
+	final static int rest = -1;
+	final static int num_notes = 12;
+	final static int max_order = 8;
+	final static int max_contexts = 1 << 20;
+
+	// Weights of repeating a length, and a rest after a rest
+	final static double same_length = 3;
+	final static double rest_after_rest = 0.2;
+
+	// Models that were built for each spec, removed with the spec
+	private final static Map<Spec, Markov[]> models =
+			Collections.synchronizedMap(new WeakHashMap<Spec, Markov[]>());
+
+	private final int order;
+	private final int states;
+	private final int contexts;
+	private final int tones;
+
+	// Every state as the index of its note (or rest) and its length
+	private final int[] note;
+	private final long[] length;
+
+	// Weight of every state before the context is counted
+	private final double[] base;
+
+	// Pitch class of every state in the key of C, or rest
+	private final int[] pitchClass;
+
+	// Weights of the intervals in semitones (0 to a tritone)
+	private final double[] interval;
+
+	// Rows of the contexts, built when they are first used. A row is
+	// immutable, so a thread that sees it before another has stored
+	// it only builds it again
+	private final Alias[] rows;
+
+	/* Constructor
+	 * @param spec Spec with the notes, lengths and their weights
+	 * @param order Number of states the next state depends on
+	 */
+	private Markov(Spec spec, int order) {
+
+		this.order = order;
+		this.interval = spec.interval_w;
+
+		// Using the lengths that are not triplets, and the rest
+		// lengths if there are rests
+		int straight = spec.straight;
+		int rests = spec.tone.length < spec.notes ? spec.rest_durs : 0;
+		tones = spec.tone.length * straight;
+		states = tones + rests;
+
+		// Counting the contexts, each is a state for every step of the order
+		long count = 1;
+		for(int i = 0; i < order; i++) {
+			count *= states;
+		}
+		if(count > max_contexts) {
+			throw new IllegalArgumentException("Order " + order + " is too high for "
+					+ states + " states");
+		}
+		contexts = (int) count;
+		rows = new Alias[contexts];
+
+		// Adding up the weights so notes and rests are as likely as
+		// in the other algorithms
+		double toneWeight = 0;
+		double restWeight = 0;
+		for(int i = 0; i < spec.notes; i++) {
+			if(spec.note[i] == rest) {
+				restWeight += spec.note_w[i];
+			}
+			else {
+				toneWeight += spec.note_w[i];
+			}
+		}
+		double durSum = sum(spec.straight_w, straight);
+		double restSum = sum(spec.rest_dur_w, rests);
+
+		note = new int[states];
+		length = new long[states];
+		base = new double[states];
+		pitchClass = new int[states];
+
+		for(int t = 0; t < spec.tone.length; t++) {
+			for(int d = 0; d < straight; d++) {
+				int s = t * straight + d;
+				note[s] = spec.tone[t];
+				length[s] = spec.note_dur[d];
+				base[s] = spec.note_w[spec.tone[t]] / toneWeight * (toneWeight / (toneWeight + restWeight))
+						* spec.straight_w[d] / durSum;
+				pitchClass[s] = Math.floorMod(spec.note[spec.tone[t]], num_notes);
+			}
+		}
+		for(int r = 0; r < rests; r++) {
+			int s = tones + r;
+			note[s] = rest;
+			length[s] = spec.rest_dur[r];
+			base[s] = restWeight / (toneWeight + restWeight) * spec.rest_dur_w[r] / restSum;
+			pitchClass[s] = rest;
+		}
+
+	}
+
+	/* Returns the model of the spec and order, building it only
+	 * the first time
+	 */
+	public static Markov get(Spec spec, int order) {
+
+		if(order < 1 || order > max_order) {
+			throw new IllegalArgumentException("Invalid order " + order);
+		}
+
+		Markov[] byOrder = models.computeIfAbsent(spec, s -> new Markov[max_order + 1]);
+		synchronized(byOrder) {
+			if(byOrder[order] == null) {
+				byOrder[order] = new Markov(spec, order);
+			}
+			return byOrder[order];
+		}
+
+	}
+
+	/* Returns the context that every track starts in, the first
+	 * state repeated for every step of the order
+	 */
+	public int start() {
+		int context = 0;
+		for(int i = 0; i < order; i++) {
+			context = push(context, 0);
+		}
+		return context;
+	}
+
+	/* Returns a random state that follows the context */
+	public int next(int context, SplittableRandom random) {
+
+		Alias row = rows[context];
+		if(row == null) {
+			row = row(context);
+			rows[context] = row;
+		}
+
+		return row.next(random);
+
+	}
+
+	/* Returns the context after the state, forgetting the oldest state */
+	public int push(int context, int state) {
+		return (int) ((long) context * states % contexts) + state;
+	}
+
+	/* Returns the index of the note of the state, or -1 for a rest */
+	public int note(int state) {
+		return note[state];
+	}
+
+	/* Returns the length of the note or rest of the state */
+	public long length(int state) {
+		return length[state];
+	}
+
+	/* Returns true if the state is a rest */
+	public boolean isRest(int state) {
+		return state >= tones;
+	}
+
+	/* Builds the row of a context, multiplying the weight of every
+	 * state by how well it follows each of the states in the context.
+	 * If no state can follow (intervals with a weight of 0) the row
+	 * falls back to the weights of the states on their own
+	 */
+	private Alias row(int context) {
+
+		double[] weights = base.clone();
+
+		int c = context;
+		for(int k = 1; k <= order; k++) {
+
+			int previous = c % states;
+			c /= states;
+			double decay = 1.0 / k;
+
+			for(int s = 0; s < states; s++) {
+				weights[s] *= Math.pow(follow(previous, s), decay);
+			}
+
+		}
+
+		if(sum(weights, states) <= 0) {
+			return new Alias(base);
+		}
+
+		return new Alias(weights);
+
+	}
+
+	/* Returns how likely the state is to come after the previous state */
+	private double follow(int previous, int state) {
+
+		boolean restBefore = isRest(previous);
+		boolean restNow = isRest(state);
+
+		if(restBefore && restNow) {
+			return rest_after_rest;
+		}
+		if(restBefore || restNow) {
+			return 1;
+		}
+
+		// Weighting the distance between the notes, and repeated lengths
+		int distance = Math.floorMod(pitchClass[state] - pitchClass[previous], num_notes);
+		distance = Math.min(distance, num_notes - distance);
+
+		return interval[distance] * (length[state] == length[previous] ? same_length : 1);
+
+	}
+
+	/* Adds up the first weights */
+	private static double sum(double[] weights, int count) {
+		double sum = 0;
+		for(int i = 0; i < count; i++) {
+			sum += weights[i];
+		}
+		return sum;
+	}
+
+}
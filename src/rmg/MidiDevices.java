@@ -0,0 +1,193 @@
+package rmg;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.sound.midi.Instrument;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.Synthesizer;
+
+/* Opens the midi devices of the GUI in the background, so the window
+ * is shown before the soundbank is loaded. Opening the sequencer loads
+ * the soundbank of the default synthesizer, which takes most of the
+ * time it takes to start the program, so it is only opened once, on
+ * its own thread, and everything that needs it waits for the future.
+ * The receiver of the endless music is also got on that thread.
+ *
+ * The names of the instruments are kept in a file in the home folder,
+ * so the choice box has them right away. They are read from the
+ * synthesizer again in the background and the file is updated if they
+ * changed. Before the file exists the General MIDI names are used.
+ */
+public final class MidiDevices {
+
+	// Variables for readability and functionality
+	final static int num_inst = 128;
+	final static Path cache = Paths.get(System.getProperty("user.home"), ".rmg", "instruments.txt");
+
+	// Names of the General MIDI instruments, used until the names of
+	// the synthesizer are known
+	final static String[] gm_names = {
+		"Acoustic Grand Piano", "Bright Acoustic Piano", "Electric Grand Piano", "Honky-tonk Piano",
+		"Electric Piano 1", "Electric Piano 2", "Harpsichord", "Clavinet",
+		"Celesta", "Glockenspiel", "Music Box", "Vibraphone",
+		"Marimba", "Xylophone", "Tubular Bells", "Dulcimer",
+		"Drawbar Organ", "Percussive Organ", "Rock Organ", "Church Organ",
+		"Reed Organ", "Accordion", "Harmonica", "Tango Accordion",
+		"Acoustic Guitar (nylon)", "Acoustic Guitar (steel)", "Electric Guitar (jazz)", "Electric Guitar (clean)",
+		"Electric Guitar (muted)", "Overdriven Guitar", "Distortion Guitar", "Guitar Harmonics",
+		"Acoustic Bass", "Electric Bass (finger)", "Electric Bass (pick)", "Fretless Bass",
+		"Slap Bass 1", "Slap Bass 2", "Synth Bass 1", "Synth Bass 2",
+		"Violin", "Viola", "Cello", "Contrabass",
+		"Tremolo Strings", "Pizzicato Strings", "Orchestral Harp", "Timpani",
+		"String Ensemble 1", "String Ensemble 2", "Synth Strings 1", "Synth Strings 2",
+		"Choir Aahs", "Voice Oohs", "Synth Voice", "Orchestra Hit",
+		"Trumpet", "Trombone", "Tuba", "Muted Trumpet",
+		"French Horn", "Brass Section", "Synth Brass 1", "Synth Brass 2",
+		"Soprano Sax", "Alto Sax", "Tenor Sax", "Baritone Sax",
+		"Oboe", "English Horn", "Bassoon", "Clarinet",
+		"Piccolo", "Flute", "Recorder", "Pan Flute",
+		"Blown Bottle", "Shakuhachi", "Whistle", "Ocarina",
+		"Lead 1 (square)", "Lead 2 (sawtooth)", "Lead 3 (calliope)", "Lead 4 (chiff)",
+		"Lead 5 (charang)", "Lead 6 (voice)", "Lead 7 (fifths)", "Lead 8 (bass + lead)",
+		"Pad 1 (new age)", "Pad 2 (warm)", "Pad 3 (polysynth)", "Pad 4 (choir)",
+		"Pad 5 (bowed)", "Pad 6 (metallic)", "Pad 7 (halo)", "Pad 8 (sweep)",
+		"FX 1 (rain)", "FX 2 (soundtrack)", "FX 3 (crystal)", "FX 4 (atmosphere)",
+		"FX 5 (brightness)", "FX 6 (goblins)", "FX 7 (echoes)", "FX 8 (sci-fi)",
+		"Sitar", "Banjo", "Shamisen", "Koto",
+		"Kalimba", "Bagpipe", "Fiddle", "Shanai",
+		"Tinkle Bell", "Agogo", "Steel Drums", "Woodblock",
+		"Taiko Drum", "Melodic Tom", "Synth Drum", "Reverse Cymbal",
+		"Guitar Fret Noise", "Breath Noise", "Seashore", "Bird Tweet",
+		"Telephone Ring", "Helicopter", "Applause", "Gunshot"
+	};
+
+	// Thread that opens the devices, one at a time
+	private final static ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "RMG midi devices");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private static CompletableFuture<Sequencer> sequencer;
+
+	/* Returns the sequencer, opening it in the background the first
+	 * time it is asked for
+	 */
+	public static synchronized CompletableFuture<Sequencer> sequencer() {
+
+		if(sequencer == null) {
+			sequencer = CompletableFuture.supplyAsync(() -> {
+				try {
+					Sequencer sqr = MidiSystem.getSequencer();
+					sqr.setLoopStartPoint(0);
+					sqr.open();
+					Startup.mark("sequencer");
+					return sqr;
+				} catch (MidiUnavailableException e) {
+					throw new IllegalStateException(e);
+				}
+			}, executor);
+		}
+
+		return sequencer;
+
+	}
+
+	/* Returns a new receiver of the default synthesizer, getting it in
+	 * the background since it loads the soundbank. The caller must close
+	 * the receiver when it is done with it
+	 */
+	public static CompletableFuture<Receiver> receiver() {
+
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				return MidiSystem.getReceiver();
+			} catch (MidiUnavailableException e) {
+				throw new IllegalStateException(e);
+			}
+		}, executor);
+
+	}
+
+	/* Returns the names of the instruments from the file, or the
+	 * General MIDI names if there is no file yet
+	 */
+	public static List<String> cachedInstruments() {
+
+		try {
+			if(Files.isReadable(cache)) {
+				List<String> names = Files.readAllLines(cache, StandardCharsets.UTF_8);
+				if(names.size() == num_inst) {
+					return names;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+
+		return Arrays.asList(gm_names);
+
+	}
+
+	/* Reads the names of the instruments from the synthesizer in the
+	 * background, writing them to the file if they are not the same
+	 */
+	public static CompletableFuture<List<String>> instruments() {
+
+		return CompletableFuture.supplyAsync(() -> {
+
+			List<String> names = new ArrayList<>(num_inst);
+			try {
+
+				// Loading the soundbank, opening the synthesizer only if
+				// it does not list its instruments when it is closed
+				Synthesizer synth = MidiSystem.getSynthesizer();
+				Instrument[] instruments = synth.getAvailableInstruments();
+				if(instruments.length < num_inst) {
+					synth.open();
+					instruments = synth.getAvailableInstruments();
+					synth.close();
+				}
+
+				for(int i = 0; i < num_inst; i++) {
+					names.add(i < instruments.length ? instruments[i].getName().trim() : gm_names[i]);
+				}
+
+			} catch (MidiUnavailableException e) {
+				throw new IllegalStateException(e);
+			}
+
+			// Updating the file if the names changed
+			if(!names.equals(cachedInstruments())) {
+				try {
+					Files.createDirectories(cache.getParent());
+					Path temp = Files.createTempFile(cache.getParent(), "instruments", ".tmp");
+					Files.write(temp, names, StandardCharsets.UTF_8);
+					Files.move(temp, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+
+			Startup.mark("instruments");
+			return names;
+
+		}, executor);
+
+	}
+
+}
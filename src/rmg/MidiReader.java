@@ -0,0 +1,196 @@
+package rmg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/* Reads Standard MIDI Files straight from their bytes without building
+ * a Sequence, giving every short message to a listener. No objects are
+ * created for the events, so many files can be read quickly.
+ *
+ * Large files are memory mapped. Small files are read into a buffer
+ * that is reused, because every mapping takes a system call to create
+ * and is only released when it is garbage collected, so mapping tens of
+ * thousands of small files would run out of mappings long before memory.
+ * A reader must only be used by one thread.
+ */
+public final class MidiReader {
+
+	// Variables for readability and functionality
+	final static int map_size = 1 << 20;
+
+	/* Receives what is read from a file */
+	public interface Listener {
+
+		/* Called once before the tracks
+		 * @param resolution Ticks per quarter note
+		 */
+		void header(int type, int tracks, int resolution);
+
+		/* Called at the start of every track chunk */
+		void track(int index);
+
+		/* Called for every channel message, in the order of the track */
+		void message(long tick, int status, int data1, int data2);
+
+	}
+
+	private final ByteBuffer small = ByteBuffer.allocateDirect(map_size);
+
+	/* Reads the file, mapping it if it is large */
+	public void read(Path path, Listener listener) throws IOException {
+
+		try(FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+
+			long size = fc.size();
+			if(size > Integer.MAX_VALUE) {
+				throw new IOException("File is too large " + path);
+			}
+
+			ByteBuffer buf;
+			if(size > map_size) {
+				buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			else {
+				small.clear();
+				while(small.position() < size && fc.read(small) >= 0) {
+					// Reading until the whole file is in the buffer
+				}
+				small.flip();
+				buf = small;
+			}
+
+			read(buf, listener);
+
+		}
+
+	}
+
+	/* Reads the midi file in the buffer, from its position to its limit */
+	public static void read(ByteBuffer buf, Listener listener) throws IOException {
+
+		// Header chunk
+		if(buf.remaining() < 14 || buf.getInt() != 0x4D546864) {
+			throw new IOException("Not a midi file");
+		}
+		int length = buf.getInt();
+		int type = buf.getShort() & 0xFFFF;
+		int tracks = buf.getShort() & 0xFFFF;
+		int division = buf.getShort();
+		if(division <= 0) {
+			throw new IOException("SMPTE time is not supported");
+		}
+		skip(buf, buf.limit(), length - 6);
+		listener.header(type, tracks, division);
+
+		// Track chunks, skipping any other chunks
+		int index = 0;
+		while(buf.remaining() >= 8) {
+
+			int id = buf.getInt();
+			length = buf.getInt();
+			if(length < 0 || length > buf.remaining()) {
+				throw new IOException("Chunk is longer than the file");
+			}
+
+			int end = buf.position() + length;
+			if(id == 0x4D54726B) {
+				listener.track(index++);
+				track(buf, end, listener);
+			}
+			buf.position(end);
+
+		}
+
+	}
+
+	/* Reads the events of a track chunk */
+	private static void track(ByteBuffer buf, int end, Listener listener) throws IOException {
+
+		long tick = 0;
+		int running = 0;
+
+		while(buf.position() < end) {
+
+			tick += vlq(buf, end);
+			int status = get(buf, end);
+
+			// Meta events and sysex, which cancel running status
+			if(status == 0xFF) {
+				get(buf, end);
+				skip(buf, end, vlq(buf, end));
+				running = 0;
+				continue;
+			}
+			if(status == 0xF0 || status == 0xF7) {
+				skip(buf, end, vlq(buf, end));
+				running = 0;
+				continue;
+			}
+
+			// Using the last status if this one is a data byte
+			int data1;
+			if(status < 0x80) {
+				if(running == 0) {
+					throw new IOException("Data byte without a status");
+				}
+				data1 = status;
+				status = running;
+			}
+			else {
+				running = status;
+				data1 = get(buf, end);
+			}
+
+			// Program changes and channel pressure only have one data byte
+			int type = status & 0xF0;
+			int data2 = type == 0xC0 || type == 0xD0 ? 0 : get(buf, end);
+
+			listener.message(tick, status, data1, data2);
+
+		}
+
+	}
+
+	/* Reads a variable length quantity */
+	private static long vlq(ByteBuffer buf, int end) throws IOException {
+
+		long value = 0;
+		for(int i = 0; i < 4; i++) {
+			int b = get(buf, end);
+			value = (value << 7) | (b & 0x7F);
+			if(b < 0x80) {
+				return value;
+			}
+		}
+
+		throw new IOException("Variable length quantity is too long");
+
+	}
+
+	/* Reads a byte of the chunk */
+	private static int get(ByteBuffer buf, int end) throws IOException {
+
+		if(buf.position() >= end) {
+			throw new IOException("Event is cut off at the end of the track");
+		}
+
+		return buf.get() & 0xFF;
+
+	}
+
+	/* Skips bytes of the chunk, a length that goes past the end of the
+	 * chunk is corrupt even if the file has more bytes after it
+	 */
+	private static void skip(ByteBuffer buf, int end, long count) throws IOException {
+
+		if(count < 0 || count > end - buf.position()) {
+			throw new IOException("Event is longer than the chunk");
+		}
+		buf.position(buf.position() + (int) count);
+
+	}
+
+}
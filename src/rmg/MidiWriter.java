@@ -0,0 +1,295 @@
+package rmg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/* Writes Standard MIDI Files straight from the events of the tracks
+ * (see EventSource), without building a Sequence. The bytes are streamed
+ * to the channel through one reusable ByteBuffer.
+ *
+ * Every track is encoded twice: the first pass only counts the bytes
+ * so the length of the track chunk is known before it is written, which
+ * means the channel does not have to be seekable. Running status is used
+ * for the short messages, and note offs are written as note ons with a
+ * velocity of 0 so that running status covers almost every note.
+ *
+ * Type 0 merges all the parts into one track, type 1 writes one track
+ * for every part. The event buffers of the parts are sorted in place
+ * before they are written, so they are left sorted; parts with an
+ * event store are read as they are.
+ */
+public final class MidiWriter {
+
+	// Variables for readability and functionality
+	final static int buffer_size = 1 << 16;
+	final static int resolution = 960;
+	final static long max_vlq = 0x0FFFFFFF;
+	final static long max_chunk = 0xFFFFFFFFL;
+
+	// Writer that is reused by each thread
+	private static final ThreadLocal<MidiWriter> local = ThreadLocal.withInitial(MidiWriter::new);
+
+	private final ByteBuffer buf = ByteBuffer.allocateDirect(buffer_size);
+	private WritableByteChannel ch;
+	private boolean counting;
+	private long count;
+	private int running;
+	private long last;
+
+	/* Writes the parts to a file
+	 * @param file File that will be written
+	 * @param type Type of the midi file (0 or 1)
+	 * @param end Tick of the end of the tracks
+	 * @param parts Info of the parts, with their events already generated,
+	 *        their event buffers are sorted
+	 */
+	public static void write(File file, int type, long end, Info... parts) throws IOException {
+
+		try(FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			local.get().write(fc, type, end, parts);
+		}
+
+	}
+
+	/* Returns the bytes of the midi file of the parts */
+	public static byte[] toByteArray(int type, long end, Info... parts) throws IOException {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		local.get().write(Channels.newChannel(out), type, end, parts);
+
+		return out.toByteArray();
+
+	}
+
+	/* Writes the parts to the channel */
+	public void write(WritableByteChannel ch, int type, long end, Info... parts) throws IOException {
+
+		if(type != 0 && type != 1) {
+			throw new IllegalArgumentException("Unsupported midi file type " + type);
+		}
+
+		this.ch = ch;
+		buf.clear();
+		counting = false;
+
+		// Sorting the events of every part so they can be merged,
+		// the events of a store are already sorted
+		for(Info part : parts) {
+			if(part.getStore() == null) {
+				part.getEvents().sort();
+			}
+		}
+
+		// Header chunk
+		putBytes("MThd");
+		putInt(6);
+		putShort(type);
+		putShort(type == 0 ? 1 : parts.length);
+		putShort(resolution);
+
+		// Track chunks
+		if(type == 0) {
+			track(parts, end);
+		}
+		else {
+			for(Info part : parts) {
+				track(new Info[] {part}, end);
+			}
+		}
+
+		flush();
+		this.ch = null;
+
+	}
+
+	/* Writes one track chunk containing all the parts */
+	private void track(Info[] parts, long end) throws IOException {
+
+		// Counting the length of the track
+		counting = true;
+		count = 0;
+		events(parts, end);
+		counting = false;
+
+		// The length of a chunk is 4 bytes
+		if(count > max_chunk) {
+			throw new IllegalArgumentException("Track is too long for a midi file " + count);
+		}
+
+		// Writing the track
+		putBytes("MTrk");
+		putInt((int) count);
+		events(parts, end);
+
+	}
+
+	/* Encodes the preamble, the notes and the end of a track */
+	private void events(Info[] parts, long end) throws IOException {
+
+		running = 0;
+		last = 0;
+
+		// General MIDI on, the tempo and the track name, encoded once
+		// by the template of the first part
+		putBytes(template(parts[0]).headerBytes);
+
+		// Set omni on, poly on and the instrument for every part
+		// on the channel of the part
+		for(Info part : parts) {
+			putBytes(template(part).controlBytes);
+			running = 0xC0 | part.getChannel();
+		}
+
+		// Merging the sorted events of all the parts
+		EventSource[] sources = new EventSource[parts.length];
+		for(int i = 0; i < parts.length; i++) {
+			sources[i] = parts[i].getSource();
+		}
+		long[] next = new long[parts.length];
+		while(true) {
+
+			// Finding the part with the earliest event
+			int min = -1;
+			long event = 0;
+			for(int i = 0; i < parts.length; i++) {
+				EventSource events = sources[i];
+				if(next[i] < events.count() && (min < 0 || events.event(next[i]) < event)) {
+					min = i;
+					event = events.event(next[i]);
+				}
+			}
+
+			if(min < 0) {
+				break;
+			}
+			next[min]++;
+
+			int status = EventBuffer.status(event);
+			int data2 = EventBuffer.data2(event);
+
+			// Writing note offs as note ons with no velocity
+			if((status & 0xF0) == 0x80) {
+				status = 0x90 | (status & 0x0F);
+				data2 = 0;
+			}
+
+			message(EventBuffer.tick(event), status, EventBuffer.data1(event), data2);
+
+		}
+
+		// Set end of track (meta event)
+		putVlq(Math.max(0, end - last));
+		put(0xFF);
+		put(0x2F);
+		put(0x00);
+
+	}
+
+	/* Encodes a short message, leaving out the status if it is the same
+	 * as the last one
+	 */
+	private void message(long tick, int status, int data1, int data2) throws IOException {
+
+		putVlq(tick - last);
+		last = tick;
+
+		if(status != running) {
+			put(status);
+			running = status;
+		}
+
+		put(data1);
+
+		// Program changes and channel pressure only have one data byte
+		int type = status & 0xF0;
+		if(type != 0xC0 && type != 0xD0) {
+			put(data2);
+		}
+
+	}
+
+	/* Returns the template of the start of the track of the part */
+	private static SequenceTemplate template(Info part) {
+		return SequenceTemplate.get(part.getTempo(), part.getInstrument(), part.getChannel());
+	}
+
+	/* Encodes a variable length quantity, which can have at most 4
+	 * bytes in a midi file, so the largest value is 0x0FFFFFFF
+	 */
+	private void putVlq(long value) throws IOException {
+
+		if(value < 0 || value > max_vlq) {
+			throw new IllegalArgumentException("Variable length quantity out of range " + value);
+		}
+
+		// Finding the highest group of 7 bits
+		int shift = 0;
+		while((value >>> (shift + 7)) != 0) {
+			shift += 7;
+		}
+
+		// Writing the groups with the continuation bit set on all but the last
+		for(; shift > 0; shift -= 7) {
+			put((int) ((value >>> shift) & 0x7F) | 0x80);
+		}
+		put((int) (value & 0x7F));
+
+	}
+
+	private void putInt(int value) throws IOException {
+		put(value >>> 24);
+		put(value >>> 16);
+		put(value >>> 8);
+		put(value);
+	}
+
+	private void putShort(int value) throws IOException {
+		put(value >>> 8);
+		put(value);
+	}
+
+	private void putBytes(String s) throws IOException {
+		putBytes(s.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	private void putBytes(byte[] bytes) throws IOException {
+		for(byte b : bytes) {
+			put(b);
+		}
+	}
+
+	/* Writes a byte, or only counts it during the first pass */
+	private void put(int b) throws IOException {
+
+		if(counting) {
+			count++;
+			return;
+		}
+
+		if(!buf.hasRemaining()) {
+			flush();
+		}
+		buf.put((byte) b);
+
+	}
+
+	/* Writes the buffer to the channel */
+	private void flush() throws IOException {
+
+		buf.flip();
+		while(buf.hasRemaining()) {
+			ch.write(buf);
+		}
+		buf.clear();
+
+	}
+
+}
@@ -0,0 +1,803 @@
+package rmg;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/* Index of what note or rest follows the last notes and rests in a
+ * folder of midi files, used by Algorithm.six to play in the style of
+ * the files. Every note is a token of its pitch class in the key of C
+ * (see Corpus for how the key of a file is found) and its length rounded
+ * to a length of the GUI, and every silence between two notes is a rest
+ * token with its length. The index counts every n-gram of tokens up to
+ * the order of the index, so the next token can be picked from the
+ * longest context that was seen in the files.
+ *
+ * The index is built once and written to a file, which is opened as a
+ * read only memory mapping, so opening even a very large index only
+ * reads its header, the pages are loaded by the system when they are
+ * used and are shared by every thread and every process that opens it.
+ * The file is mapped in segments of 1 GB, because one mapping can not
+ * be larger than 2 GB. Everything in the file is a long:
+ *
+ *   Header     magic, version, order, tokens, contexts, slots, n-grams
+ *              and files, padded to 64 bytes
+ *   Table      Open addressing hash table of the contexts, every slot
+ *              is the context + 1 (0 is empty) and the offset of its row
+ *   Rows       The total count of the context, the number of tokens
+ *              that follow it, and every token with its count as
+ *              token << 48 | count
+ *
+ * A context is the number of tokens in it shifted by 45, and the tokens
+ * 9 bits each with the most recent in the lowest bits, so up to 5 tokens
+ * fit and the context of the last tokens is only a mask of the history.
+ *
+ * Usage: java -cp RMG.jar rmg.NgramIndex -in dir -out file [-order n] [-threads n]
+ * Then play from it with -alg 6 -index file.
+ */
+public final class NgramIndex {
+
+	// Variables for readability and functionality
+	final static int magic = 0x524D474E;
+	final static int version = 1;
+	final static int header_size = 64;
+	final static int segment_bits = 30;
+	final static int token_bits = 9;
+	final static int length_shift = 45;
+	final static int count_bits = 48;
+	final static int max_order = 6;
+	final static int default_order = 4;
+	final static int num_notes = 12;
+	final static int num_lengths = Corpus.lengths.length;
+	final static int rest_token = num_notes * num_lengths;
+	final static int num_tokens = rest_token + num_lengths;
+	final static int percussion = 9;
+	final static int resolution = 960;
+	final static long min_rest = 60;
+	final static int files_per_task = 16;
+	final static int buffer_size = 1 << 16;
+
+	// Indexes that are open, so every track that uses a file shares it
+	private final static Map<Path, NgramIndex> open = new ConcurrentHashMap<>();
+
+	private final Path path;
+	private final MappedByteBuffer[] segments;
+	private final int order;
+	private final long contexts;
+	private final long slots;
+	private final long grams;
+	private final long files;
+
+	/* Constructor that maps the file and reads the header */
+	private NgramIndex(Path path) throws IOException {
+
+		this.path = path;
+
+		try(FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+
+			long size = fc.size();
+			segments = new MappedByteBuffer[(int) ((size + (1L << segment_bits) - 1) >>> segment_bits)];
+			for(int i = 0; i < segments.length; i++) {
+				long start = (long) i << segment_bits;
+				segments[i] = fc.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << segment_bits, size - start));
+			}
+
+			if(size < header_size || (int) (getLong(0) >>> 32) != magic) {
+				throw new IOException("Not an n-gram index " + path);
+			}
+			if((int) getLong(0) != version) {
+				throw new IOException("Unsupported n-gram index version " + (int) getLong(0) + " in " + path);
+			}
+
+		}
+
+		order = (int) getLong(8);
+		contexts = getLong(24);
+		slots = getLong(32);
+		grams = getLong(40);
+		files = getLong(48);
+
+		if(getLong(16) != num_tokens || Long.bitCount(slots) != 1
+				|| header_size + slots * 16 > (long) segments.length << segment_bits) {
+			throw new IOException("Damaged n-gram index " + path);
+		}
+
+	}
+
+	/* Returns the index in the file, opening it only the first time */
+	public static NgramIndex open(Path path) throws IOException {
+
+		Path key = path.toAbsolutePath().normalize();
+		NgramIndex index = open.get(key);
+
+		if(index == null) {
+			index = new NgramIndex(key);
+			NgramIndex other = open.putIfAbsent(key, index);
+			if(other != null) {
+				index = other;
+			}
+		}
+
+		return index;
+
+	}
+
+	/* Returns a random token that follows the last tokens, from the
+	 * longest context of the history that is in the index
+	 * @param history Last tokens, see push
+	 * @return The token, or -1 if the index is empty
+	 */
+	public int next(long history, SplittableRandom random) {
+
+		int length = (int) Math.min(history >>> length_shift, order - 1);
+		long tokens = history & mask(length_shift);
+
+		for(int l = length; l >= 0; l--) {
+			long row = find(((long) l << length_shift) | (tokens & mask(l * token_bits)));
+			if(row >= 0) {
+				return pick(row, random);
+			}
+		}
+
+		return -1;
+
+	}
+
+	/* Returns the history after the token, keeping the last tokens
+	 * that fit in the order of the index
+	 */
+	public long push(long history, int token) {
+		return push(history, token, order);
+	}
+
+	/* Returns the offset of the row of the context, or -1 */
+	public long find(long context) {
+
+		long mask = slots - 1;
+		for(long slot = mix(context) & mask;; slot = (slot + 1) & mask) {
+			long position = header_size + slot * 16;
+			long stored = getLong(position);
+			if(stored == 0) {
+				return -1;
+			}
+			if(stored == context + 1) {
+				return getLong(position + 8);
+			}
+		}
+
+	}
+
+	/* Returns the number of times the context was followed by the token */
+	public long count(long context, int token) {
+
+		long row = find(context);
+		if(row < 0) {
+			return 0;
+		}
+
+		long n = getLong(row + 8);
+		for(long i = 0; i < n; i++) {
+			long entry = getLong(row + 16 + i * 8);
+			if((int) (entry >>> count_bits) == token) {
+				return entry & mask(count_bits);
+			}
+		}
+
+		return 0;
+
+	}
+
+	/* Returns the context of the tokens, the oldest first */
+	public static long context(int... tokens) {
+
+		long history = 0;
+		for(int token : tokens) {
+			history = push(history, token, max_order);
+		}
+
+		return history;
+
+	}
+
+	/* Builds the index of the midi files in the folder and writes it */
+	public static void build(Path dir, Path out, int order, int threads) throws IOException {
+
+		if(order < 1 || order > max_order) {
+			throw new IllegalArgumentException("Invalid order " + order);
+		}
+
+		List<Path> paths = Corpus.files(dir);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		Counts counts;
+		try {
+			counts = pool.invoke(new Job(paths, order, 0, paths.size()));
+		} finally {
+			pool.shutdown();
+		}
+
+		write(out, order, counts);
+
+	}
+
+	/* Builds an index, or prints the header of one that exists */
+	public static void main(String[] args) throws IOException {
+
+		Options opts = Options.parse(args);
+		Path out = Paths.get(opts.getString("out", "rmg.idx"));
+
+		if(opts.has("in")) {
+			long start = System.nanoTime();
+			build(Paths.get(opts.getString("in", ".")), out, opts.getInt("order", default_order),
+					opts.getInt("threads", Runtime.getRuntime().availableProcessors()));
+			System.out.printf("Built in %.3f s%n", (System.nanoTime() - start) / 1e9);
+		}
+
+		long start = System.nanoTime();
+		NgramIndex index = open(out);
+		System.out.printf("Opened in %.3f ms%n", (System.nanoTime() - start) / 1e6);
+		System.out.println(index);
+
+	}
+
+	/* Token of a note with the pitch class in the key of C and the
+	 * index of its length in Corpus.lengths
+	 */
+	public static int note(int pitchClass, int length) {
+		return pitchClass * num_lengths + length;
+	}
+
+	/* Token of a rest with the index of its length */
+	public static int rest(int length) {
+		return rest_token + length;
+	}
+
+	public static boolean isRest(int token) {
+		return token >= rest_token;
+	}
+
+	public static int pitchClass(int token) {
+		return token / num_lengths;
+	}
+
+	/* Returns the length in ticks of the note or rest of the token */
+	public static long length(int token) {
+		return Corpus.lengths[token % num_lengths];
+	}
+
+	public int getOrder() {
+		return order;
+	}
+
+	public long getContexts() {
+		return contexts;
+	}
+
+	public long getGrams() {
+		return grams;
+	}
+
+	public long getFiles() {
+		return files;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: version %d, order %d, %d files, %d n-grams, %d contexts",
+				path, version, order, files, grams, contexts);
+	}
+
+	/* Returns the history after the token */
+	private static long push(long history, int token, int order) {
+
+		int length = (int) Math.min((history >>> length_shift) + 1, order - 1);
+		long tokens = ((history << token_bits) | token) & mask(length * token_bits);
+
+		return ((long) length << length_shift) | tokens;
+
+	}
+
+	/* Picks a token of the row with its count as its weight */
+	private int pick(long row, SplittableRandom random) {
+
+		long r = random.nextLong(getLong(row));
+		long n = getLong(row + 8);
+		for(long i = 0; i < n; i++) {
+			long entry = getLong(row + 16 + i * 8);
+			long count = entry & mask(count_bits);
+			if(r < count) {
+				return (int) (entry >>> count_bits);
+			}
+			r -= count;
+		}
+
+		return (int) (getLong(row + 16 + (n - 1) * 8) >>> count_bits);
+
+	}
+
+	/* Reads the long at the position of the file */
+	private long getLong(long position) {
+		return segments[(int) (position >>> segment_bits)].getLong((int) (position & mask(segment_bits)));
+	}
+
+	private static long mask(int bits) {
+		return bits >= 64 ? -1L : (1L << bits) - 1;
+	}
+
+	/* Spreads the bits of a context over the slots of the table */
+	private static long mix(long context) {
+		long h = context * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 29);
+	}
+
+	/* Writes the counted n-grams to the file, the contexts are found
+	 * by sorting the n-grams, since an n-gram is its context followed by
+	 * the token and the n-grams of a context are next to each other
+	 */
+	private static void write(Path out, int order, Counts counts) throws IOException {
+
+		long[] keys = counts.keys();
+		Arrays.sort(keys);
+
+		// Counting the contexts and sizing the table so it is at most half full
+		long contextCount = 0;
+		for(int i = 0; i < keys.length; i++) {
+			if(i == 0 || keys[i] >>> token_bits != keys[i - 1] >>> token_bits) {
+				contextCount++;
+			}
+		}
+		long tableSlots = Long.highestOneBit(Math.max(contextCount * 2, 2) - 1) << 1;
+		if(tableSlots > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many contexts " + contextCount);
+		}
+
+		// Putting every context in the table with the offset of its row
+		long[] tableKeys = new long[(int) tableSlots];
+		long[] tableRows = new long[(int) tableSlots];
+		long position = header_size + tableSlots * 16;
+		for(int i = 0; i < keys.length;) {
+			long context = keys[i] >>> token_bits;
+			int j = i;
+			while(j < keys.length && keys[j] >>> token_bits == context) {
+				j++;
+			}
+			long slot = mix(context) & (tableSlots - 1);
+			while(tableKeys[(int) slot] != 0) {
+				slot = (slot + 1) & (tableSlots - 1);
+			}
+			tableKeys[(int) slot] = context + 1;
+			tableRows[(int) slot] = position;
+			position += 16 + (j - i) * 8L;
+			i = j;
+		}
+
+		try(FileChannel fc = FileChannel.open(out, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+			ByteBuffer buf = ByteBuffer.allocateDirect(buffer_size);
+
+			// Header
+			put(fc, buf, ((long) magic << 32) | version);
+			put(fc, buf, order);
+			put(fc, buf, num_tokens);
+			put(fc, buf, contextCount);
+			put(fc, buf, tableSlots);
+			put(fc, buf, counts.total);
+			put(fc, buf, counts.files);
+			put(fc, buf, 0);
+
+			// Table
+			for(int s = 0; s < tableSlots; s++) {
+				put(fc, buf, tableKeys[s]);
+				put(fc, buf, tableRows[s]);
+			}
+
+			// Rows, in the same order as their offsets
+			for(int i = 0; i < keys.length;) {
+				long context = keys[i] >>> token_bits;
+				int j = i;
+				long total = 0;
+				while(j < keys.length && keys[j] >>> token_bits == context) {
+					total += counts.get(keys[j]);
+					j++;
+				}
+				put(fc, buf, total);
+				put(fc, buf, j - i);
+				for(int k = i; k < j; k++) {
+					put(fc, buf, ((keys[k] & mask(token_bits)) << count_bits) | counts.get(keys[k]));
+				}
+				i = j;
+			}
+
+			buf.flip();
+			while(buf.hasRemaining()) {
+				fc.write(buf);
+			}
+
+		}
+
+		// Dropping the old mapping if the file was open
+		open.remove(out.toAbsolutePath().normalize());
+
+	}
+
+	/* Adds a long to the buffer, writing the buffer when it is full */
+	private static void put(FileChannel fc, ByteBuffer buf, long value) throws IOException {
+
+		if(buf.remaining() < Long.BYTES) {
+			buf.flip();
+			while(buf.hasRemaining()) {
+				fc.write(buf);
+			}
+			buf.clear();
+		}
+		buf.putLong(value);
+
+	}
+
+	/* Task that counts the n-grams of the files in the range [from, to),
+	 * splitting the range in half until it is small enough
+	 */
+	static class Job extends RecursiveTask<Counts> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Path> paths;
+		private final int order;
+		private final int from;
+		private final int to;
+
+		Job(List<Path> paths, int order, int from, int to) {
+			this.paths = paths;
+			this.order = order;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Counts compute() {
+
+			// Splitting the range if there are too many files
+			if(to - from > files_per_task) {
+				int mid = (from + to) >>> 1;
+				Job left = new Job(paths, order, from, mid);
+				left.fork();
+				Counts counts = new Job(paths, order, mid, to).compute();
+				counts.add(left.join());
+				return counts;
+			}
+
+			// Counting the files of this task, skipping the ones that can not be read
+			Counts counts = new Counts();
+			Tokenizer tokenizer = new Tokenizer(counts, order);
+			MidiReader reader = new MidiReader();
+			for(int i = from; i < to; i++) {
+				try {
+					tokenizer.start();
+					reader.read(paths.get(i), tokenizer);
+					tokenizer.finish();
+				} catch (IOException | RuntimeException e) {
+					System.err.println("Could not read " + paths.get(i) + ": " + e.getMessage());
+				}
+			}
+
+			return counts;
+
+		}
+
+	}
+
+	/* Counts of the n-grams, in an open addressing table of longs so
+	 * millions of n-grams do not create millions of objects
+	 */
+	static final class Counts {
+
+		private long[] keys = new long[1024];
+		private long[] values = new long[1024];
+		private int size;
+		private long total;
+		private long files;
+
+		/* Adds to the count of the n-gram */
+		void add(long gram, long count) {
+
+			if(size * 2 >= keys.length) {
+				grow();
+			}
+
+			int mask = keys.length - 1;
+			int slot = (int) mix(gram) & mask;
+			while(keys[slot] != 0 && keys[slot] != gram + 1) {
+				slot = (slot + 1) & mask;
+			}
+			if(keys[slot] == 0) {
+				keys[slot] = gram + 1;
+				size++;
+			}
+			values[slot] += count;
+			total += count;
+
+		}
+
+		/* Returns the count of the n-gram */
+		long get(long gram) {
+
+			int mask = keys.length - 1;
+			for(int slot = (int) mix(gram) & mask; keys[slot] != 0; slot = (slot + 1) & mask) {
+				if(keys[slot] == gram + 1) {
+					return values[slot];
+				}
+			}
+
+			return 0;
+
+		}
+
+		/* Adds the counts of another table */
+		void add(Counts other) {
+			for(int i = 0; i < other.keys.length; i++) {
+				if(other.keys[i] != 0) {
+					add(other.keys[i] - 1, other.values[i]);
+				}
+			}
+			files += other.files;
+		}
+
+		/* Returns the n-grams that were counted */
+		long[] keys() {
+			long[] grams = new long[size];
+			int n = 0;
+			for(long key : keys) {
+				if(key != 0) {
+					grams[n++] = key - 1;
+				}
+			}
+			return grams;
+		}
+
+		/* Doubles the table */
+		private void grow() {
+
+			long[] oldKeys = keys;
+			long[] oldValues = values;
+			keys = new long[oldKeys.length * 2];
+			values = new long[oldKeys.length * 2];
+			size = 0;
+			long oldTotal = total;
+
+			for(int i = 0; i < oldKeys.length; i++) {
+				if(oldKeys[i] != 0) {
+					add(oldKeys[i] - 1, oldValues[i]);
+				}
+			}
+			total = oldTotal;
+
+		}
+
+	}
+
+	/* Listener that turns the notes of every channel of a file into
+	 * tokens. Only the highest note of a chord is kept, so every channel
+	 * is one line of notes. The pitches are kept until the end of the
+	 * file, when the key of the file is known
+	 */
+	static final class Tokenizer implements MidiReader.Listener {
+
+		// Marks the end of a line and a rest in the pitches of the file
+		final static int end_line = -1;
+		final static int rest_pitch = -2;
+
+		private final Counts counts;
+		private final int order;
+		private final long[] classes = new long[num_notes];
+
+		// Lines of the file, the pitch (or rest) and the length index
+		// of every note, and the lines ending with end_line
+		private int[] pitch = new int[1024];
+		private int[] length = new int[1024];
+		private int size;
+
+		// Notes of the track that is read, for every channel
+		private final Line[] lines = new Line[16];
+		private final int[] sounding = new int[16 * 128];
+		private int res;
+
+		Tokenizer(Counts counts, int order) {
+			this.counts = counts;
+			this.order = order;
+			for(int c = 0; c < lines.length; c++) {
+				lines[c] = new Line();
+			}
+		}
+
+		/* Empties the lines before a file */
+		void start() {
+			Arrays.fill(classes, 0);
+			size = 0;
+			for(Line line : lines) {
+				line.size = 0;
+			}
+		}
+
+		/* Counts the n-grams of the lines of the file in its key */
+		void finish() {
+
+			flush();
+			int key = Corpus.key(classes);
+
+			long history = 0;
+			for(int i = 0; i < size; i++) {
+
+				if(pitch[i] == end_line) {
+					history = 0;
+					continue;
+				}
+
+				int token = pitch[i] == rest_pitch ? rest(length[i])
+						: note(Math.floorMod(pitch[i] - key, num_notes), length[i]);
+
+				// Counting the token after every context of the history
+				int known = (int) (history >>> length_shift);
+				for(int l = 0; l <= known; l++) {
+					long context = ((long) l << length_shift) | (history & mask(l * token_bits));
+					counts.add((context << token_bits) | token, 1);
+				}
+				history = push(history, token, order);
+
+			}
+
+			counts.files++;
+
+		}
+
+		@Override
+		public void header(int type, int tracks, int resolution) {
+			res = resolution;
+		}
+
+		@Override
+		public void track(int index) {
+			flush();
+			Arrays.fill(sounding, -1);
+		}
+
+		@Override
+		public void message(long tick, int status, int data1, int data2) {
+
+			int type = status & 0xF0;
+			int channel = status & 0x0F;
+			if(channel == percussion || (type != 0x90 && type != 0x80)) {
+				return;
+			}
+
+			Line line = lines[channel];
+			int slot = channel * 128 + data1;
+
+			if(type == 0x90 && data2 > 0) {
+
+				classes[data1 % num_notes]++;
+
+				// Keeping the highest note of a chord
+				int last = line.size - 1;
+				if(last >= 0 && line.start[last] == tick) {
+					if(data1 > line.pitch[last]) {
+						line.pitch[last] = data1;
+						line.end[last] = -1;
+						sounding[slot] = last;
+					}
+					return;
+				}
+
+				line.add(tick, data1);
+				sounding[slot] = line.size - 1;
+
+			}
+			else if(sounding[slot] >= 0) {
+
+				// Ending the note if it is still the note of its slot
+				int i = sounding[slot];
+				if(line.pitch[i] == data1 && line.end[i] < 0) {
+					line.end[i] = tick;
+				}
+				sounding[slot] = -1;
+
+			}
+
+		}
+
+		/* Adds the lines of the track to the lines of the file */
+		private void flush() {
+
+			for(Line line : lines) {
+
+				if(line.size == 0) {
+					continue;
+				}
+
+				for(int i = 0; i < line.size; i++) {
+
+					// Notes that never end last until the next note
+					long end = line.end[i];
+					if(end <= line.start[i]) {
+						end = i + 1 < line.size ? line.start[i + 1] : line.start[i] + res;
+					}
+
+					// Adding the silence before the note as a rest
+					if(i > 0) {
+						long previous = Math.max(line.end[i - 1], line.start[i - 1]);
+						long gap = ticks(line.start[i] - previous);
+						if(line.end[i - 1] > line.start[i - 1] && gap >= min_rest) {
+							add(rest_pitch, Corpus.length(gap));
+						}
+					}
+
+					add(line.pitch[i], Corpus.length(ticks(end - line.start[i])));
+
+				}
+
+				add(end_line, 0);
+				line.size = 0;
+
+			}
+
+		}
+
+		/* Adds a note of a line */
+		private void add(int p, int l) {
+
+			if(size == pitch.length) {
+				pitch = Arrays.copyOf(pitch, size * 2);
+				length = Arrays.copyOf(length, size * 2);
+			}
+			pitch[size] = p;
+			length[size] = l;
+			size++;
+
+		}
+
+		/* Converts ticks of the file into ticks of RMG */
+		private long ticks(long ticks) {
+			return ticks * resolution / res;
+		}
+
+	}
+
+	/* Notes of one channel of a track in the order they start */
+	static final class Line {
+
+		long[] start = new long[256];
+		long[] end = new long[256];
+		int[] pitch = new int[256];
+		int size;
+
+		void add(long tick, int p) {
+
+			if(size == start.length) {
+				start = Arrays.copyOf(start, size * 2);
+				end = Arrays.copyOf(end, size * 2);
+				pitch = Arrays.copyOf(pitch, size * 2);
+			}
+			start[size] = tick;
+			end[size] = -1;
+			pitch[size] = p;
+			size++;
+
+		}
+
+	}
+
+}
@@ -0,0 +1,243 @@
+package rmg;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/* Class that holds the options given on the command line
+ * and turns them into the Info used to build a track.
+ * Options are given as "-name value" pairs, and flags
+ * without a value are stored as "true".
+ *
+ * -alg 1..6          Algorithm used to add the notes
+ * -order n           Number of notes the next note depends on (algorithm 5)
+ * -index file        N-gram index that algorithm 6 plays from (see NgramIndex)
+ * -bars n            Number of bars
+ * -tempo n           Tempo in BPM
+ * -inst n            Instrument (0-127)
+ * -seed n            Seed of the random numbers, the same seed and
+ *                    options always give the same music
+ * -notes 0,2,3,...   Valid notes/scale in the key of C
+ * -keys 6,...        Valid keys
+ * -octaves 3,4,...   Valid octaves
+ * -lengths 1/16,...  Valid note lengths (8, 4, 2, 1, 1/2 ... 1/64)
+ * -rests 1/8,...     Valid rest lengths
+ * -dotted, -double, -triplets  Same as the options in the GUI
+ * -wnotes 4,1,2,...  Weights of the notes, in the same order as -notes
+ * -wkeys, -woctaves, -wlengths, -wrests  Weights of the other lists.
+ *                    Dotted lengths come after the plain ones
+ * -wchords 1,2,...   Weights of the chord sizes 1 to 10
+ * -wintervals 2,5,.. Weights of the intervals 0 to 6 semitones (algorithm 5)
+ *                    Values without a weight get a weight of 1
+ * -corpus dir        Learns the notes, keys, octaves, lengths and their
+ *                    weights from the midi files in the folder instead
+ *                    (see Corpus)
+ */
+public class Options {
+
+	// Variables for readability and functionality
+	final static long whole = 3840;
+
+	private Map<String, String> values;
+
+	/* Constructor */
+	public Options(Map<String, String> values) {
+		this.values = values;
+	}
+
+	/* Parses the command line arguments into options */
+	public static Options parse(String[] args) {
+
+		Map<String, String> values = new HashMap<>();
+
+		for(int i = 0; i < args.length; i++) {
+
+			// Skipping anything that is not the name of an option
+			if(!args[i].startsWith("-")) {
+				continue;
+			}
+
+			// Storing the value, or true if the option is a flag. A value
+			// can start with a dash if it is a number, like a negative seed
+			String name = args[i].substring(1);
+			if(i + 1 < args.length && (!args[i + 1].startsWith("-") || number(args[i + 1]))) {
+				values.put(name, args[++i]);
+			}
+			else {
+				values.put(name, "true");
+			}
+
+		}
+
+		return new Options(values);
+
+	}
+
+	/* Returns true if the argument is a number */
+	private static boolean number(String arg) {
+		try {
+			Double.parseDouble(arg);
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	/* Returns true if the option was given */
+	public boolean has(String name) {
+		return values.containsKey(name);
+	}
+
+	/* Returns the value of the option, or the default value */
+	public String getString(String name, String def) {
+		String value = values.get(name);
+		return value == null ? def : value;
+	}
+
+	/* Returns the int value of the option, or the default value */
+	public int getInt(String name, int def) {
+		String value = values.get(name);
+		return value == null ? def : Integer.parseInt(value);
+	}
+
+	/* Returns the long value of the option, or the default value */
+	public long getLong(String name, long def) {
+		String value = values.get(name);
+		return value == null ? def : Long.parseLong(value);
+	}
+
+	/* Builds the info for a track from the options. Lists
+	 * that are not given are set to the same defaults as the GUI
+	 */
+	public Info info() {
+
+		LinkedList<Integer> note = ints("notes");
+		LinkedList<Integer> key = ints("keys");
+		LinkedList<Integer> octave = ints("octaves");
+		LinkedList<Long> note_dur = lengths("lengths");
+		LinkedList<Long> rest_dur = lengths("rests");
+
+		// Adding the dotted notes and triplets and setting the defaults
+		Engine.options(note_dur, rest_dur, has("dotted"), has("double"), has("triplets"));
+		Engine.check(note, key, octave, note_dur, rest_dur);
+
+		// Updating the info for the track
+		Info info = new Info();
+		info.setBars(getInt("bars", 16));
+		info.setTempo(getInt("tempo", 120));
+		info.setInstrument(getInt("inst", 0));
+		info.setAlgorithm(getInt("alg", 1));
+		info.setOrder(getInt("order", 2));
+		if(info.getOrder() < 1 || info.getOrder() > Markov.max_order) {
+			throw new IllegalArgumentException("order must be between 1 and " + Markov.max_order);
+		}
+		if(has("seed")) {
+			info.setSeed(getLong("seed", 0));
+		}
+		info.setSpec(new Spec(note, key, octave, note_dur, rest_dur, weights()));
+
+		// Opening the index of algorithm 6 if one is given
+		if(has("index")) {
+			try {
+				info.setIndex(NgramIndex.open(Paths.get(getString("index", "rmg.idx"))));
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		// Learning the spec from a folder of midi files if one is given
+		if(has("corpus")) {
+			try {
+				info.setSpec(Corpus.scan(Paths.get(getString("corpus", ".")),
+						getInt("threads", Runtime.getRuntime().availableProcessors())).spec());
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		return info;
+
+	}
+
+	/* Builds the weights of the values from the options */
+	public Weights weights() {
+
+		Weights weights = new Weights();
+		weights.setNote(doubles("wnotes"));
+		weights.setKey(doubles("wkeys"));
+		weights.setOctave(doubles("woctaves"));
+		weights.setNote_dur(doubles("wlengths"));
+		weights.setRest_dur(doubles("wrests"));
+		weights.setChord(doubles("wchords"));
+		weights.setInterval(doubles("wintervals"));
+
+		return weights;
+
+	}
+
+	/* Parses a comma separated list of doubles, or returns null
+	 * if the option was not given
+	 */
+	private List<Double> doubles(String name) {
+
+		String value = values.get(name);
+		if(value == null) {
+			return null;
+		}
+
+		List<Double> list = new ArrayList<>();
+		for(String s : value.split(",")) {
+			list.add(Double.valueOf(s.trim()));
+		}
+
+		return list;
+
+	}
+
+	/* Parses a comma separated list of ints */
+	private LinkedList<Integer> ints(String name) {
+
+		LinkedList<Integer> list = new LinkedList<>();
+		String value = values.get(name);
+
+		if(value != null) {
+			for(String s : value.split(",")) {
+				list.add(Integer.valueOf(s.trim()));
+			}
+		}
+
+		return list;
+
+	}
+
+	/* Parses a comma separated list of note lengths (1, 1/2, 1/4, ...)
+	 * into their length in ticks
+	 */
+	private LinkedList<Long> lengths(String name) {
+
+		LinkedList<Long> list = new LinkedList<>();
+		String value = values.get(name);
+
+		if(value != null) {
+			for(String s : value.split(",")) {
+				int slash = s.indexOf('/');
+				if(slash < 0) {
+					list.add(whole * Long.parseLong(s.trim()));
+				}
+				else {
+					long num = Long.parseLong(s.substring(0, slash).trim());
+					long den = Long.parseLong(s.substring(slash + 1).trim());
+					list.add(whole * num / den);
+				}
+			}
+		}
+
+		return list;
+
+	}
+
+}
@@ -6,7 +6,9 @@ import java.util.Random;
 import java.io.*;
 
 import javax.sound.midi.*;
+import javafx.animation.AnimationTimer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.event.ActionEvent;
@@ -18,6 +20,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Button;
 import javafx.scene.control.CheckBox;
 import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextField;
 import javafx.scene.control.Tooltip;
 import javafx.scene.layout.GridPane;
@@ -42,7 +45,7 @@ public class RMG extends Application {
 	final static int num_lengths = 10;
 	final static int num_octaves = 11;
 	final static int padding = 15;
-	final static int num_options = 3;
+	final static int num_options = 5;
 	final static int default_tempo = 120;
 	final static int default_bars = 16;
 	final static int microseconds = 60000000;
@@ -50,7 +53,7 @@ public class RMG extends Application {
 	final static int triplet = -2;
 	final static int multiplier = 100;
 	final static int num_inst = 128;
-	final static int num_algs = 3; // Change later
+	final static int num_algs = 5; // Change later
 	
 	final static double sceneWidth = 780;
 	final static double sceneHeight = 480;
@@ -60,7 +63,7 @@ public class RMG extends Application {
 	final static String[] btn_names = 
 		{"Create", "Save", "Play", "Stop", "Apply", "Apply", "?"};
 	final static String[] opt_names =
-		{"Single (.)", "Double (..)", "Triplet"};
+		{"Single (.)", "Double (..)", "Triplet", "Endless", "Ensemble"};
 	final static String[] note_lengths = 
 		{"8", "4", "2", "1", "1/2", "1/4", "1/8", "1/16", "1/32", "1/64"};
 	final static String[] txt_names = 
@@ -72,6 +75,7 @@ public class RMG extends Application {
 
 	// Arrays that contain the values of the notes, durations, octaves, keys
 	Info trackInfo;
+	Info[] trackParts;
 	LinkedList<Long> note_dur = new LinkedList<>();
 	LinkedList<Long> rest_dur = new LinkedList<>();
 	LinkedList<Integer> note = new LinkedList<>();
@@ -92,6 +96,9 @@ public class RMG extends Application {
 	
 	Sequence seq;
 	Sequencer sqr;
+	StreamPlayer stream;
+	GenerationService service;
+	ProgressBar progress;
 	
 	Text[] txts = new Text[txt_names.length];
 	Button[] btns = new Button[btn_names.length];
@@ -135,14 +142,16 @@ public class RMG extends Application {
 		algorithm = 1;
 		instrument = 0;
 		
-		// Getting sequencer from system to be used when the midi file is played
-		try {
-			sqr = MidiSystem.getSequencer();
-			sqr.setLoopStartPoint(0);
-			sqr.open();
-		} catch (MidiUnavailableException mue) {
-			mue.printStackTrace();
-		}
+		Startup.mark("launch");
+
+		// Opening the sequencer in the background, it is only needed once
+		// the play button is pressed and it takes long to load the soundbank
+		MidiDevices.sequencer().thenAccept(s -> Platform.runLater(() -> {
+			sqr = s;
+		})).exceptionally(ex -> {
+			ex.printStackTrace();
+			return null;
+		});
 		
 		// Calling method to create empty track
 		defaultTrack();
@@ -168,12 +177,17 @@ public class RMG extends Application {
 		
 		// Creates the buttons for all the actions and adds them to the pane
 		initBtns();
+
+		// Creates the service that builds the tracks in the background
+		// and the bar that shows its progress
+		initService();
 		
 		// Creates the choice boxes to choose the instrument and algorithm
 		initChB();
 
 		// Creates a rectangle that will hold the info 
 		initInfo();
+		Startup.mark("controls");
 
 		// Adding pane to a new scene and the scene to the stage
 		Scene scene = new Scene(pane, sceneWidth, sceneHeight);
@@ -181,6 +195,15 @@ public class RMG extends Application {
 		primaryStage.setResizable(false);
 		primaryStage.show();
 
+		// Recording when the window is first drawn
+		new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				Startup.mark(Startup.first_frame);
+				stop();
+			}
+		}.start();
+
 	}
 
 	/* Initializes the checkboxes that determine the length of 
@@ -261,6 +284,8 @@ public class RMG extends Application {
 		pane.add(option_cb[1], 3, 9, 2, 1);
 		pane.add(option_cb[2], 4, 8, 2, 1);
 		GridPane.setHalignment(option_cb[2], HPos.CENTER);
+		pane.add(option_cb[3], 5, 9);
+		pane.add(option_cb[4], 2, 12, 2, 1);
 		
 	}
 	
@@ -392,30 +417,27 @@ public class RMG extends Application {
 		ArrayList<String> algList = new ArrayList<>(num_algs);
 		ArrayList<String> instList = new ArrayList<>(num_inst);
 		
-		// Getting all instruments from the MidiSystem and 
-		// adding them to the instList
-		try {
-			
-			// Getting system's midi synthesizer and opening it
-			Synthesizer synth = MidiSystem.getSynthesizer();
-  		synth.open();
-  		
-  		// Getitng all instruments from synthesizer
-  		Instrument[] instruments = synth.getAvailableInstruments();
-  		
-  		// Adding all instruments to the array list
-  		for(int i = 0; i < num_inst; i++) {
-  			instList.add(instruments[i].getName());
-  		}
-			
-		} catch(MidiUnavailableException e) {
-			e.printStackTrace();
-		}
+		// Getting the instrument names that were saved the last time,
+		// so the synthesizer does not have to be opened first
+		instList.addAll(MidiDevices.cachedInstruments());
 		
 		// Adding instruments to the choice box
 		inst.setItems(FXCollections.observableArrayList((instList)));
 		inst.setValue(instList.get(0));
 
+		// Reading the names from the synthesizer in the background and
+		// replacing them if they are not the same, keeping the choice
+		MidiDevices.instruments().thenAccept(names -> Platform.runLater(() -> {
+			if(!names.equals(inst.getItems())) {
+				int selected = inst.getSelectionModel().getSelectedIndex();
+				inst.setItems(FXCollections.observableArrayList(names));
+				inst.getSelectionModel().select(Math.max(selected, 0));
+			}
+		})).exceptionally(ex -> {
+			ex.printStackTrace();
+			return null;
+		});
+
 		// Updating the instrument when a choice is selected
 		inst.getSelectionModel().selectedIndexProperty().addListener(
 				(ObservableValue<? extends Number> ov,
@@ -497,6 +519,12 @@ public class RMG extends Application {
 		// Setting the action of the create button
 		btns[0].setOnAction((ActionEvent e) -> {
 
+			// Cancelling the track if it is still being built
+			if(service.isRunning()) {
+				service.cancel();
+				return;
+			}
+
 			// Updating the boolean arrays that are checked by the user
 			update();
 
@@ -523,7 +551,14 @@ public class RMG extends Application {
 			// Writing the file if it is not null
 			if (file != null) {
 				try {
-					MidiSystem.write(seq,1,file);
+					// Writing the generated notes directly if there are any,
+					// otherwise the default track
+					if(trackInfo.getEvents() != null) {
+						MidiWriter.write(file, 1, seq.getTickLength(), trackParts);
+					}
+					else {
+						MidiSystem.write(seq,1,file);
+					}
 				} catch (IOException ex) {
 					System.out.println(ex.getMessage());
 				}
@@ -535,26 +570,46 @@ public class RMG extends Application {
 		// Setting the action of the play button
 		btns[2].setOnAction((ActionEvent e) -> {
 
-			// Creating Sequencer that will play the music.
-			try {
-				// Setting sequencer's (sqr) to the sequence of the current track 
-				sqr.setSequence(seq);
-				// Resetting tick position
-				if(position == sqr.getTickLength()) {
-					position = 0;
-				}
-				sqr.setTickPosition(position);
-				sqr.start();
-			} catch (Exception midex) {
-				midex.printStackTrace();
+			// Playing music that never ends if the option is selected
+			if(option_cb[3].isSelected()) {
+				stream();
+				return;
 			}
 
+			// Playing once the sequencer is open if it is still opening
+			if(sqr == null) {
+				MidiDevices.sequencer().thenAccept(s -> Platform.runLater(() -> {
+					sqr = s;
+					play();
+				})).exceptionally(ex -> {
+					ex.printStackTrace();
+					return null;
+				});
+				return;
+			}
+
+			play();
+
 		});
 
 		// Setting action of the stop button
 		btns[3].setOnAction((ActionEvent e) -> {
 
+			// Stopping the music that never ends if it is playing, the
+			// player is waited for in the background
+			if(stream != null) {
+				stream.stop(service.getExecutor()).exceptionally(ex -> {
+					ex.printStackTrace();
+					return null;
+				});
+				stream = null;
+				return;
+			}
+
 			// Stopping the sequencer if it is playing
+			if(sqr == null) {
+				return;
+			}
 			try{
 				position = sqr.getTickPosition();
 				sqr.stop();
@@ -581,9 +636,9 @@ public class RMG extends Application {
 				txts[4].setText("Please enter a whole number");
 			}
 
-			// Printing warning message if the value is not positive or 0
-			if(input < 1) {
-				txts[4].setText("Please enter a positive value");
+			// Printing warning message if the tempo is too slow for a midi file
+			if(input < SequenceTemplate.min_tempo) {
+				txts[4].setText("Please enter a tempo of at least " + SequenceTemplate.min_tempo);
 				tempo = default_tempo;
 			}
 
@@ -631,6 +686,43 @@ public class RMG extends Application {
 		
 	}
 		
+	/* Initializes the service that builds the tracks and the
+	 * progress bar that shows how many bars have been added
+	 */
+	private void initService() {
+
+		// Creating the service and the progress bar
+		service = new GenerationService();
+		progress = new ProgressBar();
+		progress.setMaxWidth(Double.MAX_VALUE);
+		progress.progressProperty().bind(service.progressProperty());
+		progress.visibleProperty().bind(service.runningProperty());
+
+		// Turning the create button into a cancel button while building
+		service.runningProperty().addListener(
+				(ObservableValue<? extends Boolean> ov,
+						Boolean old_val, Boolean new_val) -> {
+							btns[0].setText(new_val ? "Cancel" : btn_names[0]);
+						});
+
+		// Swapping in the new track only once it is complete
+		service.setOnSucceeded(e -> {
+			trackParts = service.getParts();
+			trackInfo = trackParts[0];
+			seq = service.getValue();
+			position = 0;
+		});
+
+		// Printing the exception if the build failed
+		service.setOnFailed(e -> {
+			service.getException().printStackTrace();
+		});
+
+		// Adding progress bar to pane
+		pane.add(progress, 2, 14, 4, 1);
+
+	}
+
 	/* Initializes a rectangle and text that will
 	 * be present when the info button is pressed
 	 */
@@ -706,12 +798,12 @@ public class RMG extends Application {
 			
 			// Adding the note to the list if it is checked
 			if(note_cb[i].isSelected()){
-				note.add(new Integer(i));
+				note.add(Integer.valueOf(i));
 			}
 			
 			// Adding the key to the list if it is checked
 			if(key_cb[i].isSelected()){
-				key.add(new Integer(i));
+				key.add(Integer.valueOf(i));
 			}
 			
 		}
@@ -721,7 +813,7 @@ public class RMG extends Application {
 			
 			// Adding octaves to list if they are checked
 			if(oct_cb[i].isSelected()) {
-				octave.add(new Integer(i));
+				octave.add(Integer.valueOf(i));
 			}
 			
 		}
@@ -731,12 +823,12 @@ public class RMG extends Application {
 
 			// Setting the length of the note duration if the checkbox is selected
 			if(len_cb[i].isSelected()){
-				note_dur.add(new Long(cur_dur));
+				note_dur.add(Long.valueOf(cur_dur));
 			}
 			
 			// Setting the length of the note duration if the checkbox is selected
 			if(rest_cb[i].isSelected()){
-				rest_dur.add(new Long(cur_dur));
+				rest_dur.add(Long.valueOf(cur_dur));
 			}
 			
 			// Incrementing last note value
@@ -744,71 +836,9 @@ public class RMG extends Application {
 
 		}
 		
-		// Checking if the check box for dotted notes is selected
-		if(option_cb[0].isSelected()) {
-			
-			// Holds the value of the dotted note
-			long dotVal = 0;
-			
-			// Getting size of list
-			int size = note_dur.size();
-
-			// Adding dotted notes of all the notes in the list to the list
-			for(int i = 0; i < size; i++) {
-				dotVal = note_dur.get(i).intValue();
-				dotVal = dotVal + (dotVal / 2);
-				note_dur.add(new Long(dotVal));
-			}
-			
-			// Getting size of list
-			size = rest_dur.size();
-
-			// Adding dotted rests of all the rests in the list to the list
-			for(int i = 0; i < size; i++) {
-				dotVal = rest_dur.get(i).intValue();
-				dotVal += (dotVal / 2);
-				rest_dur.add(new Long(dotVal));
-			}
-
-		}
-
-		// Checking if the check box for double dotted notes is selected
-		if(option_cb[1].isSelected()) {
-
-			// Holds the value of the double dotted note
-			long dotVal = 0;
-			
-			// Getting size of list
-			int size = note_dur.size();
-
-			// Adding double dotted notes of all the notes in the list to the list
-			for(int i = 0; i < size; i++) {
-				dotVal = note_dur.get(i).intValue();
-				dotVal += (dotVal / 2) + (dotVal / 4);
-				note_dur.add(new Long(dotVal));
-			}
-			
-			// Getting size of list
-			size = rest_dur.size();
-
-			// Adding double dotted rests of all the rests in the list to the list
-			for(int i = 0; i < size; i++) {
-				dotVal = rest_dur.get(i).intValue();
-				dotVal += (dotVal / 2) + (dotVal / 4);
-				rest_dur.add(new Long(dotVal));
-			}
-
-		}
-		
-		// Checking if triplets will be allowed
-		if(option_cb[2].isSelected()) {
-			
-			// Adding int to list that indicates a triplet if the list is not empty
-			if(!note_dur.isEmpty()) {
-				note_dur.add(new Long(triplet));
-			}
-			
-		}
+		// Adding the dotted notes and triplets if their check boxes are selected
+		Engine.options(note_dur, rest_dur, option_cb[0].isSelected(),
+				option_cb[1].isSelected(), option_cb[2].isSelected());
 		
 	}
 	
@@ -818,162 +848,96 @@ public class RMG extends Application {
 	 * when the track is built, it doesn't loop infinitely
 	 */
 	private void check() {
-		
-		// Sets valid notes to default scale (harmonic minor)
-		// if all checkboxes are unchecked
-		if(note.isEmpty()) {
-			note.add(new Integer(0));  // C
-			note.add(new Integer(2));  // D
-			note.add(new Integer(3));  // Eb
-			note.add(new Integer(5));  // F
-			note.add(new Integer(7));  // G
-			note.add(new Integer(8));  // Ab
-			note.add(new Integer(11)); // B
-		}
-		
-		// Sets valid keys to default key (F#) if all 
-		// checkboxes are unchecked
-		if(key.isEmpty()){
-			key.add(new Integer(6)); // 6 = F#
-		}
-		
-		// Sets octaves to default range (2-4)
-		// if no checkbox is selected
-		if(octave.isEmpty()) {
-			octave.add(new Integer(3));
-			octave.add(new Integer(4));
-		}
-		
-		// Sets valid note length to default note lengths 
-		// (1/16, 1/8) if all checkboxes are unchecked
-		if(note_dur.isEmpty()){
-			note_dur.add(new Long(240));  // 240 = 1/16
-			note_dur.add(new Long(480));  // 480 = 1/8
-		}
-		
-		// Adds a value (-1) to the valid note list if
-		// at least one of the rest boxes are selected
-		if(!rest_dur.isEmpty()){
-			note.add(new Integer(rest)); // -1 = rest
-		}
-			
+		Engine.check(note, key, octave, note_dur, rest_dur);
 	}
 	
 	
-	/* Method that takes an int that denotes the type of algorithm
-	 * 1 - Equal probability of note/keys/length. Single notes only.
-	 * 2 - Equal probability of note/keys/length. Chords allowed.
-	 * 3 - Biased probability of notes so that the note switches keys
-	 *     when it reaches common note to another key. Single notes only
-	 * 4 - Same as algorithm 3, but with chords allowed
-	 * 5 - 
-	 */
-	private long algorithm(int alg, Track trk) {
-		
-		/* For debugging purposes
-		System.out.println(note.toString());
-		System.out.println(key.toString());
-		System.out.println(octave.toString());
-		System.out.println(note_dur.toString());
-		System.out.println(rest_dur.toString()); */
-		
-		// Updating the info for the track
-		trackInfo.setT(trk);
-		trackInfo.setBars(bars);
-		trackInfo.setNote(note);
-		trackInfo.setKey(key);
-		trackInfo.setOctave(octave);
-		trackInfo.setNote_dur(note_dur);
-		trackInfo.setRest_dur(rest_dur);
-		
-		// Switch case statement that calls correct method depending on
-		// parameter alg
-		switch(alg) {
-			case 1: return Algorithm.one(trackInfo);
-			case 2: return Algorithm.two(trackInfo);
-			case 3: return Algorithm.three(trackInfo);
-		  //case 4: return Algorithm.four(trk, bars, note, key, octave, note_dur, rest_dur);
-			default: return Algorithm.one(trackInfo);
-		}
-		
-	}
-
-	
-	/* Builds the midi file of random music based on the user input
+	/* Starts building the midi file of random music based on the
+	 * user input. The current track is kept until the new one is done
 	 */
 	public void build() {
-		
-		try {
 
-			// Creating sequencer, measured in 960 ticks per quarter note
-			seq = new Sequence(Sequence.PPQ, (int) resolution);
+		// Creating the info for the new track, so the current track
+		// can still be played and saved while it is built
+		Info next = new Info();
+		next.setBars(bars);
+		next.setTempo(tempo);
+		next.setInstrument(instrument);
+		next.setAlgorithm(algorithm);
+		next.setSeed(random.nextLong());
 
-			// Creating track from sequence
-			Track track = seq.createTrack();
+		// Compiling the lists into a spec so the track does not
+		// share the lists that are changed by the checkboxes
+		next.setSpec(new Spec(note, key, octave, note_dur, rest_dur));
 
-			// General MIDI sysex. Turn on General MIDI sound set
-			byte[] b = {(byte)0xF0, 0x7E, 0x7F, 0x09, 0x01, (byte)0xF7};
-			SysexMessage sm = new SysexMessage();
-			sm.setMessage(b, 6);
-			MidiEvent me = new MidiEvent(sm,(long)0);
-			track.add(me);
+		// Building the sequence with the chosen algorithm in the background,
+		// with the other parts of the band if the option is selected
+		service.setParts(option_cb[4].isSelected() ? Ensemble.parts(next) : new Info[] {next});
+		service.restart();
 
-			// int for tempo in microseconds per quarter note
-			int mpq = (int) (microseconds / tempo); 
-
-			// Set tempo (meta event)
-			MetaMessage mt = new MetaMessage();
-			byte[] bt = {
-					(byte) (mpq >> 16 & 0xff),
-					(byte) (mpq >> 8 & 0xff), 
-					(byte) (mpq & 0xff)
-			};
-			mt.setMessage(0x51 ,bt, 3);
-			me = new MidiEvent(mt,(long)0);
-			track.add(me);
+	}
+	
 
-			// Set track name (meta event)
-			mt = new MetaMessage();
-			String TrackName = new String("midifile track");
-			mt.setMessage(0x03 ,TrackName.getBytes(), TrackName.length());
-			me = new MidiEvent(mt,(long)0);
-			track.add(me);
+	/* Plays the current track from where it was stopped
+	 */
+	private void play() {
 
-			// Set omni on 
-			ShortMessage mm = new ShortMessage();
-			mm.setMessage(0xB0, 0x7D,0x00);
-			me = new MidiEvent(mm,(long)0);
-			track.add(me);
+		// Creating Sequencer that will play the music.
+		try {
+			// Setting sequencer's (sqr) to the sequence of the current track 
+			sqr.setSequence(seq);
+			// Resetting tick position
+			if(position == sqr.getTickLength()) {
+				position = 0;
+			}
+			sqr.setTickPosition(position);
+			sqr.start();
+		} catch (Exception midex) {
+			midex.printStackTrace();
+		}
 
-			// Set poly on
-			mm = new ShortMessage();
-			mm.setMessage(0xB0, 0x7F,0x00);
-			me = new MidiEvent(mm,(long)0);
-			track.add(me);
+	}
 
-			// Set instrument to Piano
-			mm = new ShortMessage();
-			mm.setMessage(0xC0, instrument, 0x00);
-			me = new MidiEvent(mm,(long)0);
-			track.add(me);
-			
-			// Calling method that adds notes to the track, depending on the 
-			// chosen algorithm
-			long time = algorithm(algorithm, track);
-			
-			// Set end of track
-			mt = new MetaMessage();
-			byte[] bet = {};
-			mt.setMessage(0x2F, bet, 0);
-			me = new MidiEvent(mt, (long) time + resolution);
-			track.add(me);
+	/* Plays music that never ends, adding bars while it plays
+	 */
+	private void stream() {
 
-		} catch (Exception e) {
-			e.printStackTrace(); // Printing out exception
+		// Doing nothing if the music is already playing
+		if(stream != null) {
+			return;
 		}
-		
+
+		// Stopping the sequencer so the music doesn't overlap
+		if(sqr != null) {
+			sqr.stop();
+		}
+
+		// Updating the lists and the info for the music
+		update();
+		check();
+		Info streamInfo = new Info();
+		streamInfo.setTempo(tempo);
+		streamInfo.setInstrument(instrument);
+		streamInfo.setAlgorithm(algorithm);
+		streamInfo.setSeed(random.nextLong());
+		streamInfo.setSpec(new Spec(note, key, octave, note_dur, rest_dur));
+
+		// Starting the music once the receiver of the synthesizer is got
+		// in the background, unless other music started in the meantime
+		MidiDevices.receiver().thenAccept(receiver -> Platform.runLater(() -> {
+			if(stream != null) {
+				receiver.close();
+				return;
+			}
+			stream = new StreamPlayer(streamInfo, receiver, StreamPlayer.default_ahead);
+			stream.start();
+		})).exceptionally(ex -> {
+			ex.printStackTrace();
+			return null;
+		});
+
 	}
-	
+
 
 	/* Builds default track that only plays the middle c note
 	 */
@@ -983,76 +947,24 @@ public class RMG extends Application {
 			// Creating sequencer, measured in 960 ticks per quarter note
 			seq = new Sequence(Sequence.PPQ, (int) resolution);
 
-			// Creating track from sequence
-			Track track = seq.createTrack();
-
-			// General MIDI sysex. Turn on General MIDI sound set
-			byte[] b = {(byte)0xF0, 0x7E, 0x7F, 0x09, 0x01, (byte)0xF7};
-			SysexMessage sm = new SysexMessage();
-			sm.setMessage(b, 6);
-			MidiEvent me = new MidiEvent(sm,(long)0);
-			track.add(me);
-
-			// int for tempo in microseconds per quarter note
-			int mpq = (int) (microseconds / default_tempo); 
-
-			// Set tempo (meta event)
-			MetaMessage mt = new MetaMessage();
-			byte[] bt = {
-					(byte) (mpq >> 16 & 0xff),
-					(byte) (mpq >> 8 & 0xff), 
-					(byte) (mpq & 0xff)
-			};
-			mt.setMessage(0x51 ,bt, 3);
-			me = new MidiEvent(mt,(long)0);
-			track.add(me);
-
-			// Set track name (meta event)
-			mt = new MetaMessage();
-			String TrackName = new String("midifile track");
-			mt.setMessage(0x03 ,TrackName.getBytes(), TrackName.length());
-			me = new MidiEvent(mt,(long)0);
-			track.add(me);
-
-			// Set omni on 
-			ShortMessage mm = new ShortMessage();
-			mm.setMessage(0xB0, 0x7D,0x00);
-			me = new MidiEvent(mm,(long)0);
-			track.add(me);
-
-			// Set poly on
-			mm = new ShortMessage();
-			mm.setMessage(0xB0, 0x7F,0x00);
-			me = new MidiEvent(mm,(long)0);
-			track.add(me);
-
-			// Set instrument to Piano
-			mm = new ShortMessage();
-			mm.setMessage(0xC0, 0x00, 0x00);
-			me = new MidiEvent(mm,(long)0);
-			track.add(me);
+			// Creating track from sequence, starting with the shared events
+			// of the default tempo on piano
+			Track track = SequenceTemplate.get(default_tempo, 0, 0).track(seq);
 
 			// Note on - middle C
-			mm = new ShortMessage();
+			ShortMessage mm = new ShortMessage();
 			mm.setMessage(0x90,0x3C,0x60);
-			me = new MidiEvent(mm,(long)0);
+			MidiEvent me = new MidiEvent(mm,(long)0);
 			track.add(me);
 
 			// Note off - middle C - a whole note later
 			mm = new ShortMessage();
 			mm.setMessage(0x80,0x3C,0x40);
-			me = new MidiEvent(mm,(long)(resolution*4));
+			me = new MidiEvent(mm, resolution * 4);
 			track.add(me);
 
 			// Set end of track (meta event) a quarter note after
-			mt = new MetaMessage();
-			byte[] bet = {}; // empty array
-			mt.setMessage(0x2F,bet,0);
-			me = new MidiEvent(mt, (long)(resolution*5));
-			track.add(me);
-
-			// Setting sequencer's (sqr) to the sequence of the current track 
-			sqr.setSequence(seq);
+			SequenceTemplate.end(track, resolution * 5);
 
 		} catch(Exception e) {
 			e.printStackTrace(); // Printing error message
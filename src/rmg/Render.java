@@ -0,0 +1,427 @@
+package rmg;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Synthesizer;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+
+import com.sun.media.sound.AudioSynthesizer;
+
+/* Renders the generated events to a WAV file without playing them.
+ * The software synthesizer of Java Sound is opened as a stream, so it
+ * renders as fast as the processor allows instead of in real time.
+ *
+ * The track is split into chunks of bars that are rendered at the same
+ * time. Every thread opens one synthesizer, which loads the soundbank,
+ * and renders all of its chunks with it, turning off the sound and
+ * resetting the controllers between two chunks. A chunk plays the notes that start
+ * in it until they end, plus a tail for the release and reverb, and the
+ * chunks are added together in order while the file is written, so only
+ * the chunks being rendered are kept in memory.
+ *
+ * AudioSynthesizer is not exported by the java.desktop module, so the
+ * program needs --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED
+ *
+ * Usage: java --add-exports java.desktop/com.sun.media.sound=ALL-UNNAMED -cp RMG.jar rmg.Render -out song.wav [-threads n] [-chunk bars] [track options]
+ */
+public final class Render {
+
+	// Variables for readability and functionality
+	final static float sample_rate = 44100;
+	final static int channels = 2;
+	final static int frame_size = channels * 2;
+	final static long resolution = 960;
+	final static long bar = resolution * 4;
+	final static int microseconds = 60000000;
+	final static double tail = 2.0;
+	final static int default_chunk = 8;
+
+	private final int threads;
+	private final int chunkBars;
+
+	/* Constructor
+	 * @param threads Number of chunks rendered at the same time
+	 * @param chunkBars Number of bars in every chunk
+	 */
+	public Render(int threads, int chunkBars) {
+		this.threads = Math.max(threads, 1);
+		this.chunkBars = Math.max(chunkBars, 1);
+	}
+
+	/* Generates a track and renders it, printing how much faster
+	 * than real time it was
+	 */
+	public static void main(String[] args) throws Exception {
+
+		Options opts = Options.parse(args);
+		Info info = opts.info();
+		long end = Engine.generate(info) + resolution;
+		File file = new File(opts.getString("out", "rmg.wav"));
+		Render render = new Render(opts.getInt("threads", Runtime.getRuntime().availableProcessors()),
+				opts.getInt("chunk", default_chunk));
+
+		long start = System.nanoTime();
+		render.render(file, end, info);
+		double seconds = (System.nanoTime() - start) / 1e9;
+		double length = seconds(end, info.getTempo());
+
+		System.out.printf("Rendered %.1f s of music in %.2f s (%.1fx real time)%n",
+				length, seconds, length / seconds);
+
+	}
+
+	/* Renders the parts to a WAV file
+	 * @param file File that will be written
+	 * @param end Tick of the end of the track
+	 * @param parts Info of the parts, with their events already generated
+	 */
+	public void render(File file, long end, Info... parts) throws Exception {
+
+		int tempo = parts[0].getTempo();
+
+		// Sorting the events of every part, the events of a store are
+		// already sorted
+		for(Info part : parts) {
+			if(part.getStore() == null) {
+				part.getEvents().sort();
+			}
+		}
+
+		// Total length of the file
+		long total = frames(end, tempo) + (long) (tail * sample_rate);
+		long chunk = chunkBars * bar;
+		int count = (int) ((end + chunk - 1) / chunk);
+
+		// Synthesizer of every thread, opened by its first chunk
+		ThreadLocal<Synth> local = new ThreadLocal<>();
+		List<Synth> synths = Collections.synchronizedList(new ArrayList<>());
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try(OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+
+			header(out, total);
+
+			// Window of the mix that has not been written yet
+			float[] mix = new float[0];
+			long mixStart = 0;
+			long written = 0;
+
+			// Rendering the chunks in groups, so only a few are in memory
+			for(int first = 0; first < count; first += threads) {
+
+				List<Future<float[]>> results = new ArrayList<>();
+				for(int i = first; i < Math.min(first + threads, count); i++) {
+					results.add(pool.submit(new Chunk(parts, i * chunk, (i + 1) * chunk, tempo, local, synths)));
+				}
+
+				for(int i = 0; i < results.size(); i++) {
+
+					float[] samples = results.get(i).get();
+					long chunkStart = frames((first + i) * chunk, tempo);
+
+					// Growing the window so the chunk fits, then adding it
+					long needed = chunkStart + samples.length / channels - mixStart;
+					if(needed * channels > mix.length) {
+						mix = Arrays.copyOf(mix, (int) needed * channels);
+					}
+					int offset = (int) (chunkStart - mixStart) * channels;
+					for(int j = 0; j < samples.length; j++) {
+						mix[offset + j] += samples[j];
+					}
+
+					// Writing everything before the next chunk, nothing else
+					// will be added to it
+					long ready = Math.min(frames((first + i + 1) * chunk, tempo), total);
+					if(first + i + 1 == count) {
+						ready = total;
+					}
+					int frames = (int) Math.min(ready - mixStart, mix.length / channels);
+					write(out, mix, frames);
+					written += frames;
+					mix = Arrays.copyOfRange(mix, frames * channels, Math.max(mix.length, frames * channels));
+					mixStart += frames;
+
+				}
+
+			}
+
+			// Filling the rest of the file with silence
+			byte[] silence = new byte[frame_size];
+			for(; written < total; written++) {
+				out.write(silence);
+			}
+
+		} finally {
+			pool.shutdown();
+			for(Synth synth : synths) {
+				synth.close();
+			}
+		}
+
+	}
+
+	/* Synthesizer that is opened as a stream once and renders every
+	 * chunk of a thread, so the soundbank is only loaded once per thread
+	 */
+	static final class Synth {
+
+		private final Synthesizer synth;
+		private final AudioInputStream stream;
+		private final Receiver receiver;
+
+		// Number of frames that were read, which is the clock of the synthesizer
+		private long read;
+
+		/* Constructor that opens the synthesizer */
+		Synth() throws Exception {
+			synth = MidiSystem.getSynthesizer();
+			AudioFormat format = new AudioFormat(sample_rate, 16, channels, true, false);
+			stream = ((AudioSynthesizer) synth).openStream(format, null);
+			receiver = synth.getReceiver();
+		}
+
+		/* Closes the stream and the synthesizer */
+		void close() {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			synth.close();
+		}
+
+	}
+
+	/* Task that renders the notes that start in a range of ticks */
+	static class Chunk implements Callable<float[]> {
+
+		private final Info[] parts;
+		private final long from;
+		private final long to;
+		private final int tempo;
+		private final ThreadLocal<Synth> local;
+		private final List<Synth> synths;
+
+		Chunk(Info[] parts, long from, long to, int tempo, ThreadLocal<Synth> local, List<Synth> synths) {
+			this.parts = parts;
+			this.from = from;
+			this.to = to;
+			this.tempo = tempo;
+			this.local = local;
+			this.synths = synths;
+		}
+
+		@Override
+		public float[] call() throws Exception {
+
+			// Opening the synthesizer of the thread the first time
+			Synth synth = local.get();
+			if(synth == null) {
+				synth = new Synth();
+				local.set(synth);
+				synths.add(synth);
+			}
+
+			// The synthesizer keeps its clock between chunks, so the events
+			// are sent after where the last chunk stopped, and the sound and
+			// controllers of the last chunk are turned off first
+			Receiver receiver = synth.receiver;
+			long base = (long) (synth.read * 1e6 / sample_rate);
+			for(int channel = 0; channel < 16; channel++) {
+				send(receiver, 0xB0 | channel, 0x78, 0, base);
+				send(receiver, 0xB0 | channel, 0x79, 0, base);
+			}
+
+			long mpq = microseconds / tempo;
+			long last = from;
+
+			for(Info part : parts) {
+
+				// Setting the instrument on the channel of the part
+				send(receiver, 0xC0 | part.getChannel(), part.getInstrument(), 0, base);
+
+				// Sending the notes that start in the chunk and their note offs
+				EventBuffer events = events(part.getSource(), from, to);
+				for(int i = 0; i < events.size(); i++) {
+					long event = events.get(i);
+					long tick = EventBuffer.tick(event);
+					send(receiver, EventBuffer.status(event), EventBuffer.data1(event), EventBuffer.data2(event),
+							base + (tick - from) * mpq / resolution);
+					last = Math.max(last, tick);
+				}
+
+			}
+
+			// Reading the audio until the last note has ended and the tail
+			long frames = frames(last, tempo) - frames(from, tempo) + (long) (tail * sample_rate);
+			byte[] bytes = new byte[(int) frames * frame_size];
+			int read = 0;
+			while(read < bytes.length) {
+				int n = synth.stream.read(bytes, read, bytes.length - read);
+				if(n < 0) {
+					break;
+				}
+				read += n;
+			}
+
+			synth.read += read / frame_size;
+
+			// Converting the 16 bit samples to floats
+			float[] samples = new float[read / 2];
+			for(int i = 0; i < samples.length; i++) {
+				samples[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8)) / 32768f;
+			}
+
+			return samples;
+
+		}
+
+	}
+
+	/* Returns the notes that start in the range of ticks and their note
+	 * offs. The source is read by one thread at a time, since a store
+	 * can only be read by one thread
+	 */
+	private static EventBuffer events(EventSource source, long from, long to) {
+
+		EventBuffer events = new EventBuffer();
+
+		synchronized(source) {
+
+			// open counts the notes of every pitch that are still on
+			int[] open = new int[16 * 128];
+			int opened = 0;
+			for(long i = start(source, from); i < source.count(); i++) {
+
+				long event = source.event(i);
+				long tick = EventBuffer.tick(event);
+				if(tick >= to && opened == 0) {
+					break;
+				}
+
+				int status = EventBuffer.status(event);
+				int pitch = (status & 0x0F) * 128 + EventBuffer.data1(event);
+				boolean on = (status & 0xF0) == 0x90 && EventBuffer.data2(event) > 0;
+
+				if(on && tick < to) {
+					open[pitch]++;
+					opened++;
+				}
+				else if(!on && open[pitch] > 0) {
+					open[pitch]--;
+					opened--;
+				}
+				else {
+					continue;
+				}
+
+				events.add(event);
+
+			}
+
+		}
+
+		return events;
+
+	}
+
+	/* Returns the index of the first event at or after the tick */
+	private static long start(EventSource events, long tick) {
+
+		long low = 0;
+		long high = events.count();
+		while(low < high) {
+			long mid = (low + high) >>> 1;
+			if(EventBuffer.tick(events.event(mid)) < tick) {
+				low = mid + 1;
+			}
+			else {
+				high = mid;
+			}
+		}
+
+		return low;
+
+	}
+
+	/* Sends a message to the synthesizer at a time in microseconds */
+	private static void send(Receiver receiver, int status, int data1, int data2, long micros)
+			throws Exception {
+		ShortMessage sm = new ShortMessage();
+		sm.setMessage(status, data1, data2);
+		receiver.send(sm, micros);
+	}
+
+	/* Returns the number of seconds before the tick */
+	static double seconds(long tick, int tempo) {
+		return (double) tick * (microseconds / tempo) / resolution / 1e6;
+	}
+
+	/* Returns the number of frames before the tick */
+	static long frames(long tick, int tempo) {
+		return (long) (seconds(tick, tempo) * sample_rate);
+	}
+
+	/* Writes the header of a 16 bit stereo WAV file */
+	private static void header(OutputStream out, long frames) throws IOException {
+
+		long data = frames * frame_size;
+
+		out.write(new byte[] {'R', 'I', 'F', 'F'});
+		writeInt(out, (int) (36 + data));
+		out.write(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '});
+		writeInt(out, 16);
+		writeShort(out, 1);
+		writeShort(out, channels);
+		writeInt(out, (int) sample_rate);
+		writeInt(out, (int) sample_rate * frame_size);
+		writeShort(out, frame_size);
+		writeShort(out, 16);
+		out.write(new byte[] {'d', 'a', 't', 'a'});
+		writeInt(out, (int) data);
+
+	}
+
+	/* Writes the frames of the mix as 16 bit samples */
+	private static void write(OutputStream out, float[] mix, int frames) throws IOException {
+
+		byte[] bytes = new byte[frames * frame_size];
+		for(int i = 0; i < frames * channels; i++) {
+			int sample = (int) (mix[i] * 32767f);
+			sample = Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+			bytes[2 * i] = (byte) sample;
+			bytes[2 * i + 1] = (byte) (sample >> 8);
+		}
+		out.write(bytes);
+
+	}
+
+	private static void writeInt(OutputStream out, int value) throws IOException {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+		out.write(value >>> 24);
+	}
+
+	private static void writeShort(OutputStream out, int value) throws IOException {
+		out.write(value);
+		out.write(value >>> 8);
+	}
+
+}
@@ -0,0 +1,382 @@
+package rmg;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/* Static class that generates tracks in segments of bars that are
+ * generated at the same time on a fork join pool and then put back
+ * together in order, so a track of many bars takes about as long as
+ * the bars of one core on every core. Every way of building a whole
+ * track (the GUI, Batch, the cache, the server and the stream) goes
+ * through the segments, so the same seed and options always give the
+ * same notes no matter how the track is built or on how many cores.
+ *
+ * Every segment starts on the first tick of its first bar. The first
+ * segment is generated from the seed of the track as if there were no
+ * segments, so a track of one segment is the same as before, and every
+ * other segment has its own seed that is derived from the seed of the
+ * track and the index of the segment. What a segment starts with (the
+ * handoff at the boundary) is:
+ *
+ *   key     - planned before the segments are generated. Every segment
+ *             after the first starts in a key that has a note of the
+ *             key the segment before it started in. The key that segment
+ *             ended in is not known until it is generated, so the key
+ *             changes at a boundary even if the segment before modulated
+ *             away from its starting key
+ *   notes   - a note that is still playing at the end of a segment is
+ *             cut at the boundary, and a note that would start after
+ *             it is dropped, so the next segment starts on a clean bar
+ *   context - the notes before the boundary are not known, so the
+ *             Markov state, the last pitch and the n-gram history
+ *             start empty, like at the start of a track
+ *
+ * After the segments are put together the info continues from where
+ * the last segment stopped, so more bars can be added to it later.
+ */
+public class Segments {
+
+	// Variables for readability and functionality
+	final static int num_notes = 12;
+	final static long bar = Engine.resolution * 4;
+
+	// Number of bars in a segment
+	final static int segment_bars = 256;
+
+	/* Adds the notes of every part to its event buffer from the start,
+	 * every segment of every part at the same time
+	 * @return The time that the last note of all the parts ends
+	 */
+	public static long generate(Info... parts) {
+
+		Builder builder = new Builder(parts);
+		while(builder.hasNext()) {
+			builder.next(builder.getCount());
+		}
+
+		return builder.getTime();
+
+	}
+
+	/* Adds the notes of every part to its event store, generating a few
+	 * segments of every part at the same time and moving them into the
+	 * stores in order, so only the notes of those segments are kept on
+	 * the heap. Parts without a store get a new one, which the caller
+	 * must close
+	 * @return The time that the last note of all the parts ends
+	 */
+	public static long store(Info... parts) throws IOException {
+
+		// Starting with empty stores
+		for(Info part : parts) {
+			if(part.getStore() == null) {
+				part.setStore(new EventStore());
+			}
+			part.getStore().clear();
+		}
+
+		// Generating the segments a window at a time, the notes of every
+		// window are finished once they are put together
+		Builder builder = new Builder(parts);
+		int window = parallelism();
+		while(builder.hasNext()) {
+			builder.next(window);
+			for(Info part : parts) {
+				part.getStore().drain(part.getEvents());
+			}
+		}
+
+		return builder.getTime();
+
+	}
+
+	/* Returns the number of segments of a track */
+	public static int count(int bars) {
+		return Math.max(1, (bars + segment_bars - 1) / segment_bars);
+	}
+
+	/* Returns the number of threads of the pool the segments run in,
+	 * which is the number of segments worth generating at the same time
+	 */
+	public static int parallelism() {
+		return Math.max(1, ForkJoinTask.inForkJoinPool() ? ForkJoinTask.getPool().getParallelism()
+				: ForkJoinPool.commonPool().getParallelism());
+	}
+
+	/* Builds the segments of the parts of a track in order, a few at a
+	 * time, adding the notes of every segment to the event buffer of its
+	 * part. The parts start from their seeds with empty buffers
+	 */
+	public static final class Builder {
+
+		private final Info[] parts;
+		private final Plan[] plans;
+		private final int[][] keys;
+		private final int count;
+		private int done;
+		private long time;
+
+		/* Constructor */
+		public Builder(Info... parts) {
+
+			this.parts = parts;
+			count = count(parts[0].getBars());
+			plans = new Plan[parts.length];
+			keys = new int[parts.length][count];
+
+			for(int p = 0; p < parts.length; p++) {
+				Info part = parts[p];
+				if(part.getEvents() == null) {
+					part.setEvents(new EventBuffer());
+				}
+				part.getEvents().clear();
+				part.setT(null);
+				part.reset();
+				plans[p] = new Plan(part);
+				for(int i = 0; i < count; i++) {
+					keys[p][i] = plans[p].next();
+				}
+			}
+
+		}
+
+		/* Returns true if there are segments left */
+		public boolean hasNext() {
+			return done < count;
+		}
+
+		/* Generates the next segments of every part at the same time
+		 * @param window Number of segments of every part
+		 * @return Number of bars that are done
+		 */
+		public int next(int window) {
+
+			int from = done;
+			int to = Math.min(count, from + Math.max(window, 1));
+			int bars = parts[0].getBars();
+
+			// Generating the segments of every part
+			Info[] segments = new Info[parts.length * (to - from)];
+			for(int p = 0; p < parts.length; p++) {
+				for(int i = from; i < to; i++) {
+					int first = i * segment_bars;
+					segments[p * (to - from) + i - from] = segment(parts[p], keys[p][i], i,
+							Math.min(segment_bars, bars - first));
+				}
+			}
+			run(segments);
+
+			// Putting the notes of the segments together in order, cutting
+			// them at the end of every segment but the last
+			for(int p = 0; p < parts.length; p++) {
+				for(int i = from; i < to; i++) {
+					Info segment = segments[p * (to - from) + i - from];
+					stitch(segment.getEvents(), parts[p].getEvents(), i < count - 1 ? segment.getEnd() : Long.MAX_VALUE);
+					segment.setEvents(null);
+					if(i == count - 1) {
+						time = Math.max(time, resume(parts[p], segment));
+					}
+				}
+			}
+
+			done = to;
+			return Math.min(done * segment_bars, bars);
+
+		}
+
+		/* Returns the number of segments of every part */
+		public int getCount() {
+			return count;
+		}
+
+		/* Returns the time that the last note of all the parts ends,
+		 * once every segment is done
+		 */
+		public long getTime() {
+			return time;
+		}
+
+	}
+
+	/* Keys that the segments of a track start in, one after the other.
+	 * The first is the key the track starts in with its seed, and every
+	 * other one is a key that has a note of the key before it, like the
+	 * key changes of algorithm 3
+	 */
+	public static final class Plan {
+
+		private final Spec spec;
+		private final SplittableRandom random;
+		private int last = -1;
+
+		/* Constructor */
+		public Plan(Info info) {
+			spec = info.getSpec();
+			random = new SplittableRandom(info.getSeed());
+		}
+
+		/* Returns the key of the next segment */
+		public int next() {
+
+			if(last < 0) {
+				last = spec.key[spec.nextKey(random)];
+				return last;
+			}
+
+			// Getting a note of the last key and the keys that have it
+			int pc = spec.pitchIn(last, 0, spec.nextTone(random)) % num_notes;
+			int[] keys = spec.graph.candidates(pc);
+			if(keys.length > 0) {
+				last = keys[random.nextInt(keys.length)];
+			}
+
+			return last;
+
+		}
+
+	}
+
+	/* Returns the info of a segment of the track that starts on its first
+	 * bar. The first segment starts from the seed of the track, the others
+	 * in the planned key with their own seed
+	 */
+	static Info segment(Info info, int key, int index, int bars) {
+
+		long start = (long) index * segment_bars * bar;
+
+		Info segment = info.copy();
+		segment.setBars(bars);
+		segment.setEvents(new EventBuffer());
+		segment.setTime(start);
+		segment.setEnd(start);
+		if(index > 0) {
+			segment.setSeed(Engine.seed(info.getSeed(), index));
+			segment.setKeyVal(key);
+		}
+
+		return segment;
+
+	}
+
+	/* Adds the notes of a segment to the buffer. Notes that start at or
+	 * after the end are dropped and notes that end after it are cut at
+	 * the end. The notes must be in the order the algorithms add them,
+	 * with the note off of every note right after its note on (see
+	 * EventBuffer.note), they can not be sorted
+	 * @param end Tick of the end of the segment
+	 */
+	static void stitch(EventBuffer notes, EventBuffer events, long end) {
+
+		if(notes.size() % 2 != 0) {
+			throw new IllegalStateException("Notes of a segment are not pairs of events");
+		}
+
+		for(int i = 0; i < notes.size(); i += 2) {
+
+			long on = notes.get(i);
+			long off = notes.get(i + 1);
+
+			// Checking that the events are the note on and off of one note
+			if((EventBuffer.status(on) & 0xF0) != EventBuffer.note_on
+					|| EventBuffer.status(off) != (EventBuffer.note_off | (EventBuffer.status(on) & 0x0F))
+					|| EventBuffer.data1(on) != EventBuffer.data1(off)) {
+				throw new IllegalStateException("Notes of a segment are not pairs of events at " + i);
+			}
+
+			if(EventBuffer.tick(on) >= end) {
+				continue;
+			}
+			if(EventBuffer.tick(off) > end) {
+				off = EventBuffer.pack(end, EventBuffer.status(off), EventBuffer.data1(off), EventBuffer.data2(off));
+			}
+
+			events.add(on);
+			events.add(off);
+
+		}
+
+	}
+
+	/* Saves where the last segment stopped in the info of the track, so
+	 * more bars can be added to it later
+	 * @return The time that the last note ends
+	 */
+	static long resume(Info info, Info last) {
+
+		info.setTime(last.getTime());
+		info.setEnd(last.getEnd());
+		info.setRandom(last.getRandom());
+		info.setKeyVal(last.getKeyVal());
+		info.setContext(last.getContext());
+		info.setPitch(last.getPitch());
+		info.setHistory(last.getHistory());
+
+		return last.getTime();
+
+	}
+
+	/* Runs the segments in the common pool, or in the pool of the
+	 * caller if it is already running in one. A single segment is
+	 * generated on the thread of the caller
+	 */
+	private static void run(Info[] segments) {
+
+		if(segments.length == 1) {
+			Engine.algorithm(segments[0]);
+			return;
+		}
+
+		Job job = new Job(segments, 0, segments.length);
+
+		if(ForkJoinTask.inForkJoinPool()) {
+			job.invoke();
+		}
+		else {
+			ForkJoinPool.commonPool().invoke(job);
+		}
+
+	}
+
+	/* Task that generates the segments in the range [from, to),
+	 * splitting the range in half until there is only one segment left
+	 */
+	static class Job extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Info[] segments;
+		private final int from;
+		private final int to;
+
+		Job(Info[] segments, int from, int to) {
+			this.segments = segments;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+
+			// Nothing to do if the range is empty
+			if(from >= to) {
+				return;
+			}
+
+			// Splitting the range if there is more than one segment
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Job(segments, from, mid), new Job(segments, mid, to));
+				return;
+			}
+
+			// Adding the notes of the segment
+			Engine.algorithm(segments[from]);
+
+		}
+
+	}
+
+}
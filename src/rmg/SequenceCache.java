@@ -0,0 +1,276 @@
+package rmg;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/* Cache of the midi files that were generated, so the same track is
+ * never generated twice. A track is only decided by its seed, spec,
+ * algorithm, order, index, tempo, bars, instrument and channel (of every part),
+ * so those are the key, and the file is kept as its encoded bytes,
+ * which are much smaller than the events or a Sequence.
+ *
+ * The least recently used files are removed when the bytes of all the
+ * files are over the limit. The numbers of hits, misses and evictions
+ * are counted so the cache can be sized.
+ *
+ * A file that is asked for by many threads at the same time is only
+ * generated once: the first thread generates it and the others wait
+ * for its future instead of generating it too (they are counted as
+ * waits).
+ */
+public final class SequenceCache {
+
+	// Variables for readability and functionality
+	final static long default_limit = 64L << 20;
+	final static int entry_overhead = 96;
+
+	// Cache shared by every request of the server
+	private final static SequenceCache shared = new SequenceCache(default_limit);
+
+	private final long limit;
+	private final LinkedHashMap<Key, byte[]> files = new LinkedHashMap<>(16, 0.75f, true);
+	private long bytes;
+
+	// Files that are being generated
+	private final ConcurrentHashMap<Key, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong waits = new AtomicLong();
+
+	/* Constructor
+	 * @param limit Maximum number of bytes of all the files
+	 */
+	public SequenceCache(long limit) {
+		this.limit = limit;
+	}
+
+	/* Returns the cache that is shared by the whole program */
+	public static SequenceCache shared() {
+		return shared;
+	}
+
+	/* Returns the file of the parts if it is in the cache, or null */
+	public byte[] get(Info... parts) {
+
+		byte[] file;
+		synchronized(this) {
+			file = files.get(new Key(parts));
+		}
+
+		(file == null ? misses : hits).incrementAndGet();
+		return file;
+
+	}
+
+	/* Adds the file of the parts, removing the least recently used
+	 * files until the cache is under its limit
+	 */
+	public void put(byte[] file, Info... parts) {
+
+		long size = size(file);
+		if(size > limit) {
+			return;
+		}
+
+		synchronized(this) {
+
+			byte[] old = files.put(new Key(parts), file);
+			if(old != null) {
+				bytes -= size(old);
+			}
+			bytes += size;
+
+			Iterator<Map.Entry<Key, byte[]>> it = files.entrySet().iterator();
+			while(bytes > limit && it.hasNext()) {
+				bytes -= size(it.next().getValue());
+				it.remove();
+				evictions.incrementAndGet();
+			}
+
+		}
+
+	}
+
+	/* Returns the file of the parts, generating it only if it is not
+	 * in the cache or being generated by another thread. The parts only
+	 * have events if they were generated by this call
+	 */
+	public byte[] bytes(Info... parts) throws IOException {
+
+		byte[] file = get(parts);
+		if(file != null) {
+			return file;
+		}
+
+		// Waiting for the thread that is already generating the file
+		Key key = new Key(parts);
+		CompletableFuture<byte[]> future = new CompletableFuture<>();
+		CompletableFuture<byte[]> other = pending.putIfAbsent(key, future);
+		if(other != null) {
+			waits.incrementAndGet();
+			return join(other);
+		}
+
+		try {
+
+			// Checking again, the file may have been added since the miss
+			synchronized(this) {
+				file = files.get(key);
+			}
+
+			if(file == null) {
+				long time = Ensemble.generate(parts);
+				file = MidiWriter.toByteArray(1, time + Engine.resolution, parts);
+				put(file, parts);
+			}
+			future.complete(file);
+
+			return file;
+
+		} catch (Throwable e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			pending.remove(key, future);
+		}
+
+	}
+
+	/* Removes all the files, the counters are kept */
+	public synchronized void clear() {
+		files.clear();
+		bytes = 0;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getWaits() {
+		return waits.get();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized int getSize() {
+		return files.size();
+	}
+
+	public long getLimit() {
+		return limit;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("files=%d bytes=%d hits=%d misses=%d evictions=%d waits=%d",
+				getSize(), getBytes(), getHits(), getMisses(), getEvictions(), getWaits());
+	}
+
+	/* Returns the file of another thread once it is generated, with the
+	 * exception it failed with if it failed
+	 */
+	private static byte[] join(CompletableFuture<byte[]> future) throws IOException {
+
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the file");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+
+	}
+
+	/* Returns the bytes a file takes in the cache */
+	private static long size(byte[] file) {
+		return file.length + entry_overhead;
+	}
+
+	/* Everything that decides the music of the parts */
+	static final class Key {
+
+		private final long[] seeds;
+		private final Spec[] specs;
+		private final NgramIndex[] indexes;
+		private final int[] values;
+		private final int hash;
+
+		Key(Info... parts) {
+
+			seeds = new long[parts.length];
+			specs = new Spec[parts.length];
+			indexes = new NgramIndex[parts.length];
+			values = new int[parts.length * 6];
+
+			for(int i = 0; i < parts.length; i++) {
+				Info part = parts[i];
+				seeds[i] = part.getSeed();
+				specs[i] = part.getSpec();
+				indexes[i] = part.getIndex();
+				values[i * 6] = part.getAlgorithm();
+				values[i * 6 + 1] = part.getOrder();
+				values[i * 6 + 2] = part.getTempo();
+				values[i * 6 + 3] = part.getBars();
+				values[i * 6 + 4] = part.getInstrument();
+				values[i * 6 + 5] = part.getChannel();
+			}
+
+			hash = 31 * (31 * Arrays.hashCode(seeds) + Arrays.hashCode(specs)) + Arrays.hashCode(values);
+
+		}
+
+		@Override
+		public boolean equals(Object o) {
+
+			if(!(o instanceof Key)) {
+				return false;
+			}
+
+			Key other = (Key) o;
+			return hash == other.hash
+					&& Arrays.equals(seeds, other.seeds)
+					&& Arrays.equals(values, other.values)
+					&& Arrays.equals(specs, other.specs)
+					&& Arrays.equals(indexes, other.indexes);
+
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+}
@@ -0,0 +1,245 @@
+package rmg;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+
+/* The events that every track starts with, built once and shared by
+ * every track with the same tempo, instrument, channel and name:
+ *
+ *   General MIDI on (sysex), tempo and track name (meta events),
+ *   omni on, poly on and the instrument on the channel
+ *
+ * The messages are checked and encoded once, as the bytes of a track
+ * chunk for MidiWriter, and as midi messages that every track of a
+ * Sequence gets its own copy of, so a track can change its events
+ * without changing the template. Templates are immutable and kept in a
+ * small cache shared by every thread.
+ */
+public final class SequenceTemplate {
+
+	// Variables for readability and functionality
+	final static int microseconds = 60000000;
+	final static int max_mpq = 0xFFFFFF;
+
+	// Slowest tempo, the microseconds per quarter note of a slower one
+	// do not fit in the 3 bytes of the set tempo event
+	final static int min_tempo = microseconds / max_mpq + 1;
+	final static int max_cached = 64;
+	final static String default_name = "midifile track";
+	final static byte[] gm_on = {(byte)0xF0, 0x7E, 0x7F, 0x09, 0x01, (byte)0xF7};
+
+	// Templates that were built, the least recently used is removed first
+	private final static Map<String, SequenceTemplate> cache = Collections.synchronizedMap(
+			new LinkedHashMap<String, SequenceTemplate>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, SequenceTemplate> eldest) {
+					return size() > max_cached;
+				}
+			});
+
+	// End of track, copied for every track
+	private final static MetaMessage end_of_track = endOfTrack();
+
+	private final int tempo;
+	private final int instrument;
+	private final int channel;
+	private final String name;
+
+	// Messages of the start of a track that only depend on the tempo and
+	// name, then the ones on the channel of the part, all at tick 0
+	private final MidiMessage[] messages;
+
+	// The same events encoded for a track chunk, every event with a
+	// delta time of 0. The controls leave running status on the
+	// program change of the channel
+	final byte[] headerBytes;
+	final byte[] controlBytes;
+
+	/* Constructor that builds the events */
+	private SequenceTemplate(int tempo, int instrument, int channel, String name)
+			throws InvalidMidiDataException {
+
+		this.tempo = tempo;
+		this.instrument = instrument;
+		this.channel = channel;
+		this.name = name;
+
+		// int for tempo in microseconds per quarter note
+		int mpq = microseconds / tempo;
+		byte[] bt = {(byte) (mpq >> 16), (byte) (mpq >> 8), (byte) mpq};
+		byte[] bn = name.getBytes(StandardCharsets.US_ASCII);
+
+		// General MIDI sysex. Turn on General MIDI sound set
+		SysexMessage sm = new SysexMessage();
+		sm.setMessage(gm_on, gm_on.length);
+
+		// Set tempo (meta event)
+		MetaMessage mt = new MetaMessage();
+		mt.setMessage(0x51, bt, bt.length);
+
+		// Set track name (meta event)
+		MetaMessage mn = new MetaMessage();
+		mn.setMessage(0x03, bn, bn.length);
+
+		// Set omni on, poly on and the instrument
+		messages = new MidiMessage[] {
+				sm, mt, mn,
+				new ShortMessage(0xB0 | channel, 0x7D, 0x00),
+				new ShortMessage(0xB0 | channel, 0x7F, 0x00),
+				new ShortMessage(0xC0 | channel, instrument, 0x00)
+		};
+
+		// Encoding the sysex and meta events, their lengths are all
+		// under 128 so they fit in one byte
+		byte[] h = new byte[3 + gm_on.length + 4 + bt.length + 4 + bn.length];
+		int i = 0;
+		h[i++] = 0;
+		h[i++] = (byte) 0xF0;
+		h[i++] = (byte) (gm_on.length - 1);
+		System.arraycopy(gm_on, 1, h, i, gm_on.length - 1);
+		i += gm_on.length - 1;
+		i = meta(h, i, 0x51, bt);
+		i = meta(h, i, 0x03, bn);
+		headerBytes = Arrays.copyOf(h, i);
+
+		// Encoding the controls, the second has the same status as the first
+		controlBytes = new byte[] {
+				0, (byte) (0xB0 | channel), 0x7D, 0x00,
+				0, 0x7F, 0x00,
+				0, (byte) (0xC0 | channel), (byte) instrument
+		};
+
+	}
+
+	/* Returns the template of the tempo, instrument and channel with
+	 * the default name, building it only the first time
+	 */
+	public static SequenceTemplate get(int tempo, int instrument, int channel) {
+		return get(tempo, instrument, channel, default_name);
+	}
+
+	/* Returns the template, building it only the first time */
+	public static SequenceTemplate get(int tempo, int instrument, int channel, String name) {
+
+		if(tempo < min_tempo || instrument < 0 || instrument > 127 || channel < 0 || channel > 15
+				|| name.length() > 127) {
+			throw new IllegalArgumentException("Invalid template " + tempo + " " + instrument
+					+ " " + channel + " " + name);
+		}
+
+		String id = tempo + " " + instrument + " " + channel + " " + name;
+		SequenceTemplate template = cache.get(id);
+
+		if(template == null) {
+			try {
+				template = new SequenceTemplate(tempo, instrument, channel, name);
+			} catch (InvalidMidiDataException e) {
+				throw new IllegalArgumentException(e);
+			}
+			cache.put(id, template);
+		}
+
+		return template;
+
+	}
+
+	/* Creates a track in the sequence that starts with copies of the
+	 * messages, so the events of the track are its own
+	 */
+	public Track track(Sequence seq) {
+
+		Track track = seq.createTrack();
+		for(MidiMessage message : messages) {
+			track.add(new MidiEvent((MidiMessage) message.clone(), 0));
+		}
+
+		return track;
+
+	}
+
+	/* Creates a track with the events, the notes of the buffer and the
+	 * end of the track
+	 * @param end Tick of the end of the track
+	 */
+	public Track track(Sequence seq, EventBuffer events, long end) throws InvalidMidiDataException {
+
+		Track track = track(seq);
+		events.toTrack(track);
+		end(track, end);
+
+		return track;
+
+	}
+
+	/* Sets the end of the track */
+	public static void end(Track track, long tick) {
+		track.add(new MidiEvent((MidiMessage) end_of_track.clone(), tick));
+	}
+
+	public int getTempo() {
+		return tempo;
+	}
+
+	public int getInstrument() {
+		return instrument;
+	}
+
+	public int getChannel() {
+		return channel;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/* Returns the encoded sysex and meta events */
+	public byte[] getHeaderBytes() {
+		return headerBytes.clone();
+	}
+
+	/* Returns the encoded controls of the channel */
+	public byte[] getControlBytes() {
+		return controlBytes.clone();
+	}
+
+	/* Encodes a meta event at delta time 0 */
+	private static int meta(byte[] b, int i, int type, byte[] data) {
+
+		b[i++] = 0;
+		b[i++] = (byte) 0xFF;
+		b[i++] = (byte) type;
+		b[i++] = (byte) data.length;
+		System.arraycopy(data, 0, b, i, data.length);
+
+		return i + data.length;
+
+	}
+
+	/* Builds the end of track message */
+	private static MetaMessage endOfTrack() {
+
+		MetaMessage mt = new MetaMessage();
+		try {
+			mt.setMessage(0x2F, new byte[0], 0);
+		} catch (InvalidMidiDataException e) {
+			e.printStackTrace();
+		}
+
+		return mt;
+
+	}
+
+}
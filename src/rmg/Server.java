@@ -0,0 +1,318 @@
+package rmg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/* Command line program that generates midi files for other programs
+ * over HTTP, with the server of the JDK so nothing else is needed.
+ *
+ * Usage: java -cp RMG.jar rmg.Server [-host 127.0.0.1] [-port 8080]
+ *        [-max n] [-maxbars n] [-threads n]
+ *
+ *   GET /generate?alg=5&bars=16&notes=0,2,3,5,7,8,11&lengths=1/8,1/4
+ *       Returns the midi file (audio/midi). The parameters are the same
+ *       as the track options of Options without the dash, flags like
+ *       dotted or ensemble have no value. The seed of the file is in the
+ *       X-RMG-Seed header, so the same file can be asked for again
+ *   GET /metrics
+ *       Returns the latency of the files, the requests that were turned
+ *       away and the numbers of the SequenceCache as text
+ *
+ * Every request runs on its own virtual thread if the JVM has them, or
+ * on a pool of threads if it does not. At most -max files are generated
+ * at the same time, the requests after that get a 503 straight away
+ * instead of waiting, so a busy server answers quickly. Files are kept
+ * in the shared SequenceCache, so a file that was asked for with a seed
+ * before is not generated again.
+ */
+public class Server {
+
+	// Variables for readability and functionality
+	final static int default_port = 8080;
+	final static int default_bars = 1024;
+	final static int backlog = 1024;
+	final static String midi_type = "audio/midi";
+	final static String text_type = "text/plain; charset=utf-8";
+
+	// Options that can be given to /generate. Options that read files
+	// (corpus and index) are left out, the server only makes music
+	final static Set<String> parameters = new HashSet<>(Arrays.asList(
+			"alg", "order", "bars", "tempo", "inst", "seed",
+			"notes", "keys", "octaves", "lengths", "rests", "dotted", "double", "triplets",
+			"wnotes", "wkeys", "woctaves", "wlengths", "wrests", "wchords", "wintervals",
+			"ensemble"));
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final int max;
+	private final int maxBars;
+
+	// Time from the request to the last byte of the file, for the files
+	// that were sent, and the requests that were not
+	private final Latency latency = new Latency();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong invalid = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	/* Constructor, the server is started by start
+	 * @param address Address and port the server listens on
+	 * @param max Number of files that are generated at the same time
+	 * @param maxBars Number of bars a file can have
+	 * @param threads Number of threads if there are no virtual threads
+	 */
+	public Server(InetSocketAddress address, int max, int maxBars, int threads) throws IOException {
+
+		this.max = Math.max(max, 1);
+		this.permits = new Semaphore(this.max);
+		this.maxBars = maxBars;
+
+		executor = executor(threads);
+		server = HttpServer.create(address, backlog);
+		server.setExecutor(executor);
+		server.createContext("/generate", this::generate);
+		server.createContext("/metrics", this::metrics);
+
+	}
+
+	/* Starts the server and prints where it listens */
+	public static void main(String[] args) throws Exception {
+
+		Options opts = Options.parse(args);
+		int cores = Runtime.getRuntime().availableProcessors();
+		InetSocketAddress address = new InetSocketAddress(opts.getString("host", "127.0.0.1"),
+				opts.getInt("port", default_port));
+
+		Server server = new Server(address, opts.getInt("max", cores * 4),
+				opts.getInt("maxbars", default_bars), opts.getInt("threads", cores * 4));
+		server.start();
+
+		System.out.println("Listening on http://" + address.getHostString() + ":"
+				+ server.getPort() + "/generate");
+
+	}
+
+	/* Starts answering requests */
+	public void start() {
+		server.start();
+	}
+
+	/* Stops the server, waiting at most the delay for the requests
+	 * that are being answered
+	 * @param delay Seconds to wait
+	 */
+	public void stop(int delay) {
+		server.stop(delay);
+		executor.shutdown();
+	}
+
+	/* Returns the port the server listens on */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	public Latency getLatency() {
+		return latency;
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/* Answers /generate with the midi file of the parameters */
+	private void generate(HttpExchange exchange) throws IOException {
+
+		long start = System.nanoTime();
+
+		try {
+
+			if(!exchange.getRequestMethod().equals("GET")) {
+				send(exchange, 405, text_type, "Only GET is allowed\n".getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+
+			// Turning the request away if enough files are being generated
+			if(!permits.tryAcquire()) {
+				rejected.incrementAndGet();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				send(exchange, 503, text_type, "Busy\n".getBytes(StandardCharsets.UTF_8));
+				return;
+			}
+
+			try {
+
+				// Reading the parameters into the info of the track
+				Info[] parts;
+				try {
+					parts = parts(query(exchange.getRequestURI().getRawQuery()));
+				} catch (IllegalArgumentException e) {
+					invalid.incrementAndGet();
+					send(exchange, 400, text_type, (e.getMessage() + "\n").getBytes(StandardCharsets.UTF_8));
+					return;
+				}
+
+				// Sending the file, from the cache if it was generated before
+				byte[] file = SequenceCache.shared().bytes(parts);
+				exchange.getResponseHeaders().set("X-RMG-Seed", Long.toString(parts[0].getSeed()));
+				send(exchange, 200, midi_type, file);
+				latency.record(System.nanoTime() - start);
+
+			} finally {
+				permits.release();
+			}
+
+		} catch (Throwable e) {
+
+			failed.incrementAndGet();
+			e.printStackTrace();
+
+			// Telling the client what went wrong if nothing was sent yet,
+			// the exception is only thrown again to be logged by the server
+			if(exchange.getResponseCode() < 0) {
+				try {
+					send(exchange, 500, text_type, ("Generation failed: " + e + "\n").getBytes(StandardCharsets.UTF_8));
+				} catch (IOException sendError) {
+					sendError.printStackTrace();
+				}
+			}
+			throw e;
+
+		} finally {
+			exchange.close();
+		}
+
+	}
+
+	/* Answers /metrics with the numbers of the server as text */
+	private void metrics(HttpExchange exchange) throws IOException {
+
+		try {
+
+			StringBuilder sb = new StringBuilder();
+			sb.append("latency ").append(latency).append('\n');
+			sb.append("active ").append(max - permits.availablePermits()).append(" of ").append(max).append('\n');
+			sb.append("rejected ").append(rejected.get()).append('\n');
+			sb.append("invalid ").append(invalid.get()).append('\n');
+			sb.append("failed ").append(failed.get()).append('\n');
+			sb.append("cache ").append(SequenceCache.shared()).append('\n');
+
+			send(exchange, 200, text_type, sb.toString().getBytes(StandardCharsets.UTF_8));
+
+		} finally {
+			exchange.close();
+		}
+
+	}
+
+	/* Returns the parts of the track of the parameters
+	 * @throws IllegalArgumentException If a parameter is not known or
+	 *         not valid, with the message that is sent back
+	 */
+	private Info[] parts(Map<String, String> values) {
+
+		for(String name : values.keySet()) {
+			if(!parameters.contains(name)) {
+				throw new IllegalArgumentException("Unknown parameter " + name);
+			}
+		}
+
+		Info info;
+		try {
+			info = new Options(values).info();
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Invalid parameters: " + e.getMessage());
+		}
+
+		// Checking the values that the spec does not check
+		if(info.getBars() < 1 || info.getBars() > maxBars) {
+			throw new IllegalArgumentException("bars must be between 1 and " + maxBars);
+		}
+		if(info.getTempo() < SequenceTemplate.min_tempo || info.getInstrument() < 0 || info.getInstrument() > 127) {
+			throw new IllegalArgumentException("Invalid tempo or instrument");
+		}
+
+		// Building the Markov models of the parts that use them, so an
+		// order that is too high for the spec is found before generating
+		Info[] parts = values.containsKey("ensemble") ? Ensemble.parts(info) : new Info[] {info};
+		for(Info part : parts) {
+			if(part.getAlgorithm() == 5 || (part.getAlgorithm() == 6 && part.getIndex() == null)) {
+				Markov.get(part.getSpec(), part.getOrder());
+			}
+		}
+
+		return parts;
+
+	}
+
+	/* Parses the query of a request into the values of the options,
+	 * a name without a value is a flag and is stored as "true"
+	 */
+	static Map<String, String> query(String raw) {
+
+		Map<String, String> values = new HashMap<>();
+		if(raw == null || raw.isEmpty()) {
+			return values;
+		}
+
+		for(String pair : raw.split("&")) {
+			if(pair.isEmpty()) {
+				continue;
+			}
+			int eq = pair.indexOf('=');
+			String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+			String value = eq < 0 ? "true" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+			values.put(name, value);
+		}
+
+		return values;
+
+	}
+
+	/* Sends the response with its length, so the connection can be
+	 * used again by the next request
+	 */
+	private static void send(HttpExchange exchange, int code, String type, byte[] body) throws IOException {
+
+		exchange.getResponseHeaders().set("Content-Type", type);
+		exchange.sendResponseHeaders(code, body.length);
+		try(OutputStream out = exchange.getResponseBody()) {
+			out.write(body);
+		}
+
+	}
+
+	/* Returns an executor that starts a virtual thread for every
+	 * request if the JVM has them (Java 21 and later), or a pool of
+	 * threads if it does not. The method is looked up by name so the
+	 * program still builds and runs on Java 17
+	 */
+	private static ExecutorService executor(int threads) {
+
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(Math.max(threads, 1), r -> {
+				Thread thread = new Thread(r, "RMG server");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+
+	}
+
+}
@@ -0,0 +1,527 @@
+package rmg;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/* Immutable class that contains the valid notes, keys, octaves
+ * and lengths of a track as primitive arrays. It is compiled once
+ * from the lists collected by RMG or Options, so the algorithms can
+ * pick a random value with a single array access, and it can be
+ * shared between threads. The weights of the values are compiled
+ * into alias tables, so a weighted pick also takes constant time.
+ */
+public final class Spec {
+
+	// Variables for readability and functionality
+	final static long triplet = -2;
+	final static int rest = -1;
+	final static int max = 127;
+	final static int num_notes = 12;
+	final static int max_chord = 10;
+	final static int max_triplet_chord = 7;
+	final static int num_intervals = 7;
+
+	// Weights of the intervals in semitones (0 to a tritone) when
+	// none are given, steps are more likely than leaps
+	final static double[] default_interval = {2, 5, 5, 3, 3, 2, 1};
+
+	// Valid values, only read by the algorithms
+	final int[] note;
+	final int[] key;
+	final int[] octave;
+	final long[] note_dur;
+	final long[] rest_dur;
+
+	// Number of values in each array
+	final int notes;
+	final int keys;
+	final int octaves;
+	final int note_durs;
+	final int rest_durs;
+
+	// Number of note lengths that are not triplets. The triplets
+	// are moved to the end of the array so a length that is not a
+	// triplet can be chosen with random.nextInt(straight)
+	final int straight;
+
+	// Pitch of every key, octave and note, indexed by
+	// (key * octaves + octave) * notes + note, folded into 0-127.
+	// Rests stay -1
+	final int[] pitch;
+
+	// Pitch of every octave and note in each of the 12 keys, indexed
+	// by the value of the key and then by octave * notes + note, for
+	// algorithms that stay in one key until they change it
+	final int[][] keyed;
+
+	// Pitch classes of the notes in the key of C and the valid keys,
+	// as 12 bit masks where bit i is the pitch class or key i
+	final int scaleMask;
+	final int keyMask;
+
+	// Keys that contain each pitch class, shared by every spec
+	// with the same scale and keys
+	final KeyGraph graph;
+
+	// Indexes of the notes that are not rests
+	final int[] tone;
+
+	// Weights of the values, in the same order as the values
+	final double[] note_w;
+	final double[] key_w;
+	final double[] octave_w;
+	final double[] note_dur_w;
+	final double[] straight_w; // lengths that are not triplets (see straightWeights)
+	final double[] rest_dur_w;
+	final double[] chord_w;
+	final double[] interval_w;
+
+	// Hash of all the values and weights, computed once
+	private final int hash;
+
+	// Tables that pick the index of a value with its weight
+	private final Alias notePick;
+	private final Alias tonePick;
+	private final Alias keyPick;
+	private final Alias octavePick;
+	private final Alias noteDurPick;
+	private final Alias straightPick;
+	private final Alias restDurPick;
+	private final Alias chordPick;
+	private final Alias tripletChordPick;
+
+	/* Constructor that copies the lists into arrays, every value
+	 * has the same weight
+	 */
+	public Spec(List<Integer> note, List<Integer> key, List<Integer> octave,
+			List<Long> note_dur, List<Long> rest_dur) {
+		this(note, key, octave, note_dur, rest_dur, new Weights());
+	}
+
+	/* Constructor that copies the lists into arrays and builds
+	 * the tables that pick the values with their weights
+	 */
+	public Spec(List<Integer> note, List<Integer> key, List<Integer> octave,
+			List<Long> note_dur, List<Long> rest_dur, Weights weights) {
+
+		this.note = ints(note);
+		this.key = ints(key);
+		this.octave = ints(octave);
+		this.note_dur = durations(note_dur);
+		this.rest_dur = longs(rest_dur);
+
+		// Checking the lengths, a length of 0 would never move the time
+		// forward and the algorithms would add notes until out of memory
+		for(long d : this.note_dur) {
+			if(d <= 0 && d != triplet) {
+				throw new IllegalArgumentException("Invalid note length " + d);
+			}
+		}
+		for(long d : this.rest_dur) {
+			if(d <= 0) {
+				throw new IllegalArgumentException("Invalid rest length " + d);
+			}
+		}
+
+		// Checking the keys, the tables of the pitches have one row for each
+		for(int k : this.key) {
+			if(k < 0 || k >= num_notes) {
+				throw new IllegalArgumentException("Invalid key " + k);
+			}
+		}
+
+		notes = this.note.length;
+		keys = this.key.length;
+		octaves = this.octave.length;
+		note_durs = this.note_dur.length;
+		rest_durs = this.rest_dur.length;
+
+		// Checking that a rest has a length, a rest with none to pick
+		// from would fail in the middle of the track
+		if(rest_durs == 0) {
+			for(int n : this.note) {
+				if(n == rest) {
+					throw new IllegalArgumentException("Rests need at least one rest length");
+				}
+			}
+		}
+
+		// Counting the lengths that are not triplets
+		int count = 0;
+		for(int i = 0; i < note_durs; i++) {
+			if(this.note_dur[i] != triplet) {
+				count++;
+			}
+		}
+		straight = count;
+		if(straight == 0) {
+			throw new IllegalArgumentException("Every note length is a triplet");
+		}
+
+		// Building the tables of the weights
+		double[] noteWeights = Weights.array(weights.getNote(), notes);
+		double[] durWeights = durationWeights(note_dur, Weights.array(weights.getNote_dur(), note_durs));
+		double[] restWeights = Weights.array(weights.getRest_dur(), rest_durs);
+		double[] chordWeights = Weights.array(weights.getChord(), max_chord);
+		note_w = noteWeights;
+		key_w = Weights.array(weights.getKey(), keys);
+		octave_w = Weights.array(weights.getOctave(), octaves);
+		note_dur_w = durWeights;
+		rest_dur_w = restWeights;
+		chord_w = chordWeights;
+		interval_w = weights.getInterval() == null ? default_interval.clone()
+				: Weights.array(weights.getInterval(), num_intervals);
+		notePick = new Alias(noteWeights);
+		keyPick = new Alias(key_w);
+		octavePick = new Alias(octave_w);
+		noteDurPick = new Alias(durWeights);
+		straight_w = straightWeights(durWeights, straight);
+		straightPick = new Alias(straight_w);
+		restDurPick = new Alias(restWeights);
+		chordPick = new Alias(chordWeights);
+		tripletChordPick = new Alias(Arrays.copyOf(chordWeights, max_triplet_chord));
+
+		// Checking that a note can be picked when a rest is not allowed
+		double toneWeight = 0;
+		for(int i = 0; i < notes; i++) {
+			if(this.note[i] != rest) {
+				toneWeight += noteWeights[i];
+			}
+		}
+		if(notes > 0 && toneWeight <= 0) {
+			throw new IllegalArgumentException("Every note has a weight of 0");
+		}
+
+		// Building the table of the notes that are not rests, so a note
+		// can be picked without picking again every time a rest comes up
+		int tones = 0;
+		for(int i = 0; i < notes; i++) {
+			if(this.note[i] != rest) {
+				tones++;
+			}
+		}
+		tone = new int[tones];
+		double[] toneWeights = new double[tones];
+		tones = 0;
+		for(int i = 0; i < notes; i++) {
+			if(this.note[i] != rest) {
+				toneWeights[tones] = noteWeights[i];
+				tone[tones++] = i;
+			}
+		}
+		tonePick = new Alias(toneWeights);
+
+		// Building the masks of the scale and the keys
+		int scale = 0;
+		for(int n : tone) {
+			scale |= 1 << Math.floorMod(this.note[n], num_notes);
+		}
+		int keySet = 0;
+		for(int k : this.key) {
+			keySet |= 1 << Math.floorMod(k, num_notes);
+		}
+		scaleMask = scale;
+		keyMask = keySet;
+		graph = KeyGraph.get(scaleMask, keyMask);
+
+		// Hashing the values and weights, everything else is computed from them
+		int h = Arrays.hashCode(this.note);
+		h = 31 * h + Arrays.hashCode(this.key);
+		h = 31 * h + Arrays.hashCode(this.octave);
+		h = 31 * h + Arrays.hashCode(this.note_dur);
+		h = 31 * h + Arrays.hashCode(this.rest_dur);
+		h = 31 * h + Arrays.hashCode(note_w);
+		h = 31 * h + Arrays.hashCode(key_w);
+		h = 31 * h + Arrays.hashCode(octave_w);
+		h = 31 * h + Arrays.hashCode(note_dur_w);
+		h = 31 * h + Arrays.hashCode(rest_dur_w);
+		h = 31 * h + Arrays.hashCode(chord_w);
+		h = 31 * h + Arrays.hashCode(interval_w);
+		hash = h;
+
+		// Computing the pitches once so the algorithms only look them up
+		pitch = new int[keys * octaves * notes];
+		for(int k = 0; k < keys; k++) {
+			for(int o = 0; o < octaves; o++) {
+				for(int n = 0; n < notes; n++) {
+					pitch[(k * octaves + o) * notes + n] = fold(this.key[k], this.octave[o], this.note[n]);
+				}
+			}
+		}
+
+		keyed = new int[num_notes][octaves * notes];
+		for(int k = 0; k < num_notes; k++) {
+			for(int o = 0; o < octaves; o++) {
+				for(int n = 0; n < notes; n++) {
+					keyed[k][o * notes + n] = fold(k, this.octave[o], this.note[n]);
+				}
+			}
+		}
+
+	}
+
+	/* Methods that pick the index of a random value with its weight */
+
+	int nextNote(SplittableRandom random) {
+		return notePick.next(random);
+	}
+
+	/* Picks a note that is not a rest */
+	int nextTone(SplittableRandom random) {
+		return tone[tonePick.next(random)];
+	}
+
+	int nextKey(SplittableRandom random) {
+		return keyPick.next(random);
+	}
+
+	int nextOctave(SplittableRandom random) {
+		return octavePick.next(random);
+	}
+
+	int nextNoteDur(SplittableRandom random) {
+		return noteDurPick.next(random);
+	}
+
+	/* Picks a note length that is not a triplet */
+	int nextStraight(SplittableRandom random) {
+		return straightPick.next(random);
+	}
+
+	int nextRestDur(SplittableRandom random) {
+		return restDurPick.next(random);
+	}
+
+	/* Picks the size of a chord (1-10) */
+	int nextChord(SplittableRandom random) {
+		return chordPick.next(random) + 1;
+	}
+
+	/* Picks the size of a chord in a triplet (1-7) */
+	int nextTripletChord(SplittableRandom random) {
+		return tripletChordPick.next(random) + 1;
+	}
+
+	/* Returns the pitch of the key, octave and note at the indexes */
+	int pitch(int k, int o, int n) {
+		return pitch[(k * octaves + o) * notes + n];
+	}
+
+	/* Returns the pitch of the octave and note at the indexes
+	 * @param keyVal Value of the key (0-11), not its index
+	 */
+	int pitchIn(int keyVal, int o, int n) {
+		return keyed[keyVal][o * notes + n];
+	}
+
+	/* Two specs are equal if they have the same values and weights,
+	 * so they give the same music with the same seed
+	 */
+	@Override
+	public boolean equals(Object o) {
+
+		if(this == o) {
+			return true;
+		}
+		if(!(o instanceof Spec)) {
+			return false;
+		}
+
+		Spec other = (Spec) o;
+		return hash == other.hash
+				&& Arrays.equals(note, other.note)
+				&& Arrays.equals(key, other.key)
+				&& Arrays.equals(octave, other.octave)
+				&& Arrays.equals(note_dur, other.note_dur)
+				&& Arrays.equals(rest_dur, other.rest_dur)
+				&& Arrays.equals(note_w, other.note_w)
+				&& Arrays.equals(key_w, other.key_w)
+				&& Arrays.equals(octave_w, other.octave_w)
+				&& Arrays.equals(note_dur_w, other.note_dur_w)
+				&& Arrays.equals(rest_dur_w, other.rest_dur_w)
+				&& Arrays.equals(chord_w, other.chord_w)
+				&& Arrays.equals(interval_w, other.interval_w);
+
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	/* Getters for the number of values */
+
+	public int getNotes() {
+		return notes;
+	}
+
+	public int getKeys() {
+		return keys;
+	}
+
+	public int getOctaves() {
+		return octaves;
+	}
+
+	public int getNote_durs() {
+		return note_durs;
+	}
+
+	public int getRest_durs() {
+		return rest_durs;
+	}
+
+	/* Getters for the values, returned as copies so the spec stays immutable */
+
+	public int[] getNote() {
+		return note.clone();
+	}
+
+	public int[] getKey() {
+		return key.clone();
+	}
+
+	public int[] getOctave() {
+		return octave.clone();
+	}
+
+	public long[] getNote_dur() {
+		return note_dur.clone();
+	}
+
+	public long[] getRest_dur() {
+		return rest_dur.clone();
+	}
+
+	/* Returns the midi note of the note in the key and octave,
+	 * moved by octaves until it is between 0 and 127
+	 */
+	static int fold(int keyVal, int octVal, int noteVal) {
+
+		// Rests have no pitch
+		if(noteVal == rest) {
+			return rest;
+		}
+
+		int note = noteVal + keyVal + (num_notes * octVal);
+		while(note > max) {
+			note -= num_notes;
+		}
+		while(note < 0) {
+			note += num_notes;
+		}
+
+		return note;
+
+	}
+
+	/* Copies a list of Integers into an array */
+	private static int[] ints(List<Integer> list) {
+
+		int[] array = new int[list.size()];
+		int i = 0;
+		for(Integer value : list) {
+			array[i++] = value.intValue();
+		}
+
+		return array;
+
+	}
+
+	/* Copies a list of note lengths into an array, with the
+	 * triplets after all the other lengths
+	 */
+	private static long[] durations(List<Long> list) {
+
+		long[] array = new long[list.size()];
+		int i = 0;
+		for(Long value : list) {
+			if(value.longValue() != triplet) {
+				array[i++] = value.longValue();
+			}
+		}
+		while(i < array.length) {
+			array[i++] = triplet;
+		}
+
+		return array;
+
+	}
+
+	/* Returns the mask of the pitch classes moved up by the interval */
+	static int rotate(int mask, int interval) {
+		interval = Math.floorMod(interval, num_notes);
+		return ((mask << interval) | (mask >>> (num_notes - interval))) & 0xFFF;
+	}
+
+	/* Returns the bit of the mask that has n set bits before it */
+	static int select(int mask, int n) {
+
+		for(int i = 0; i < n; i++) {
+			mask &= mask - 1;
+		}
+
+		return Integer.numberOfTrailingZeros(mask);
+
+	}
+
+	/* Moves the weights of the note lengths to the same places the
+	 * lengths are moved to, with the triplets at the end
+	 */
+	private static double[] durationWeights(List<Long> list, double[] weights) {
+
+		double[] array = new double[weights.length];
+		int i = 0;
+		int j = 0;
+		for(Long value : list) {
+			if(value.longValue() != triplet) {
+				array[i++] = weights[j];
+			}
+			j++;
+		}
+		j = 0;
+		for(Long value : list) {
+			if(value.longValue() == triplet) {
+				array[i++] = weights[j];
+			}
+			j++;
+		}
+
+		return array;
+
+	}
+
+	/* Returns the weights of the lengths that are not triplets. If they
+	 * all have a weight of 0 (only triplets are played), the length of a
+	 * triplet is picked out of all of them with the same weight
+	 */
+	private static double[] straightWeights(double[] durWeights, int straight) {
+
+		double[] weights = Arrays.copyOf(durWeights, straight);
+		double sum = 0;
+		for(double w : weights) {
+			sum += w;
+		}
+		if(sum <= 0) {
+			Arrays.fill(weights, 1);
+		}
+
+		return weights;
+
+	}
+
+	/* Copies a list of Longs into an array */
+	private static long[] longs(List<Long> list) {
+
+		long[] array = new long[list.size()];
+		int i = 0;
+		for(Long value : list) {
+			array[i++] = value.longValue();
+		}
+
+		return array;
+
+	}
+
+}
@@ -0,0 +1,68 @@
+package rmg;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Records when each phase of starting the program finished, counted
+ * from when the process started, so the time until the window is first
+ * drawn can be seen and the phases that slow it down can be found.
+ * The phases up to the first frame are printed on one line when it is
+ * drawn, and every phase after that (like the midi devices that are
+ * opened in the background) is printed when it finishes.
+ *
+ * Nothing is printed unless the rmg.startup system property is true
+ * (java -Drmg.startup=true ...), then the phases go to stderr.
+ */
+public final class Startup {
+
+	// Phase that prints the phases before it
+	final static String first_frame = "first frame";
+
+	// Whether the phases are printed
+	private final static boolean enabled = Boolean.getBoolean("rmg.startup");
+
+	private final static long origin = origin();
+	private final static List<String> phases = new ArrayList<>();
+	private static boolean shown = false;
+
+	/* Records that the phase has finished */
+	public static synchronized void mark(String phase) {
+
+		String entry = phase + " " + (System.currentTimeMillis() - origin) + " ms";
+
+		if(shown) {
+			print(entry);
+			return;
+		}
+
+		phases.add(entry);
+		if(phase.equals(first_frame)) {
+			shown = true;
+			print(String.join(", ", phases));
+		}
+
+	}
+
+	/* Returns the phases that were recorded before the first frame */
+	public static synchronized List<String> getPhases() {
+		return new ArrayList<>(phases);
+	}
+
+	/* Prints the phases if printing is turned on */
+	private static void print(String text) {
+		if(enabled) {
+			System.err.println("Startup: " + text);
+		}
+	}
+
+	/* Returns the time the process started, or the time this class
+	 * was loaded if the system does not know it
+	 */
+	private static long origin() {
+		return ProcessHandle.current().info().startInstant()
+				.map(Instant::toEpochMilli)
+				.orElse(System.currentTimeMillis());
+	}
+
+}
@@ -0,0 +1,246 @@
+package rmg;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/* Plays music that never ends. Instead of building the whole track
+ * before it is played, the algorithm adds one bar at a time while
+ * the music plays, staying a few bars ahead of what is being heard.
+ * The bars are added to the segments of a track that never ends (see
+ * Segments), so the music starts the same as a track with the seed.
+ * Only the bars that have not been played yet are kept, so the memory
+ * used does not grow, and the first note can be heard as soon as one
+ * bar has been generated.
+ *
+ * A Sequencer needs the whole Sequence before it starts, so the player
+ * gives the events to a LiveOutput, which sends them to the Receiver
+ * of the synthesizer from its own thread.
+ *
+ * Usage: java -cp RMG.jar rmg.StreamPlayer [-ahead bars] [track options]
+ */
+public final class StreamPlayer implements Runnable {
+
+	// Variables for readability and functionality
+	final static long resolution = 960;
+	final static long bar = resolution * 4;
+	final static int microseconds = 60000000;
+	final static int default_ahead = 2;
+
+	private final Info info;
+	private final Receiver receiver;
+	private final int ahead;
+	private final EventBuffer pending = new EventBuffer();
+	private final LiveOutput output;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	// Segment that is being generated, where it ends and how many of
+	// its bars are done
+	private Segments.Plan plan;
+	private Info segment;
+	private int index;
+	private long limit;
+	private int done;
+
+	/* Constructor
+	 * @param info Info of the track, its bars are ignored
+	 * @param receiver Receiver that the events are sent to, it is
+	 *        closed when the player is stopped
+	 * @param ahead Number of bars that are generated ahead of the music
+	 */
+	public StreamPlayer(Info info, Receiver receiver, int ahead) {
+		this(info, receiver, null, ahead);
+	}
+
+	/* Constructor with the device of the receiver, so the events
+	 * are sent with their time on the device's clock
+	 */
+	public StreamPlayer(Info info, Receiver receiver, MidiDevice device, int ahead) {
+		this.info = info;
+		this.receiver = receiver;
+		this.ahead = Math.max(ahead, 1);
+		this.output = new LiveOutput(receiver, device);
+	}
+
+	/* Plays the music until the program is stopped */
+	public static void main(String[] args) throws Exception {
+
+		Options opts = Options.parse(args);
+		StreamPlayer player = new StreamPlayer(opts.info(), MidiSystem.getReceiver(),
+				opts.getInt("ahead", default_ahead));
+
+		player.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(player::stop));
+		player.thread.join();
+
+	}
+
+	/* Starts playing the music in a new thread */
+	public synchronized void start() {
+
+		if(running) {
+			return;
+		}
+
+		running = true;
+		thread = new Thread(this, "RMG stream");
+		thread.setDaemon(true);
+		thread.start();
+
+	}
+
+	/* Stops the music, turns off the notes that are playing and
+	 * closes the receiver, waiting for the thread of the player
+	 */
+	public synchronized void stop() {
+
+		running = false;
+		if(thread != null) {
+			LockSupport.unpark(thread);
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		receiver.close();
+
+	}
+
+	/* Tells the music to stop and waits for the player on the executor,
+	 * so a thread that must not block (the Application thread) does not
+	 * wait for the bar that is being added
+	 * @return Future that is done once the receiver is closed
+	 */
+	public CompletableFuture<Void> stop(Executor executor) {
+		running = false;
+		return CompletableFuture.runAsync(this::stop, executor);
+	}
+
+	/* Returns the live output, which has the statistics of how
+	 * late the events were sent
+	 */
+	public LiveOutput getOutput() {
+		return output;
+	}
+
+	/* Returns true if the music is playing */
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void run() {
+
+		try {
+
+			// Starting the track and setting the instrument
+			pending.clear();
+			plan = new Segments.Plan(info);
+			next(0);
+			int channel = info.getChannel();
+			send(0xB0 | channel, 0x7D, 0x00);
+			send(0xB0 | channel, 0x7F, 0x00);
+			send(0xC0 | channel, info.getInstrument(), 0x00);
+
+			// Generating the first bar and starting the clock
+			long mpq = microseconds / info.getTempo();
+			step();
+			output.start();
+			push(mpq);
+
+			while(running) {
+
+				// Getting the tick that is being played
+				long now = output.now() * resolution / mpq;
+
+				// Adding a bar if the music is less than the look ahead
+				// in front of what is being played, otherwise waiting
+				// for a quarter of a bar
+				if(segment.getTime() < now + ahead * bar) {
+					step();
+					push(mpq);
+				}
+				else {
+					LockSupport.parkNanos(bar / 4 * mpq / resolution * 1000);
+				}
+
+			}
+
+			// Turning off all notes
+			output.stop();
+			send(0xB0 | channel, 0x7B, 0x00);
+
+		} catch (InvalidMidiDataException e) {
+			e.printStackTrace();
+			output.stop();
+			running = false;
+		}
+
+	}
+
+	/* Adds the next bar of the segment, starting the next segment once
+	 * every bar of the segment is done. The music is the same as the
+	 * segments of a track that never ends (see Segments), so the notes
+	 * are cut at the end of every segment
+	 */
+	private void step() {
+
+		if(done == Segments.segment_bars) {
+			next(index + 1);
+		}
+
+		Engine.algorithm(segment);
+		done++;
+
+		Segments.stitch(segment.getEvents(), pending, limit);
+		segment.getEvents().clear();
+
+	}
+
+	/* Starts the segment with the index, one bar at a time */
+	private void next(int index) {
+
+		this.index = index;
+		segment = Segments.segment(info, plan.next(), index, 1);
+		limit = (long) (index + 1) * Segments.segment_bars * bar;
+		done = 0;
+
+	}
+
+	/* Sends the events that can no longer change order to the live
+	 * output. Every bar that is added starts after the time of the
+	 * segment, and no note of the segment goes past its end, so only
+	 * the note offs after that time have to wait for the next bar
+	 */
+	private void push(long mpq) {
+
+		pending.sort();
+
+		long before = Math.min(segment.getTime(), limit);
+		int count = 0;
+		while(count < pending.size() && EventBuffer.tick(pending.get(count)) < before) {
+			long event = pending.get(count++);
+			output.schedule(EventBuffer.tick(event) * mpq / resolution, event);
+		}
+		pending.remove(count);
+
+	}
+
+	/* Sends a short message to the receiver right away */
+	private void send(int status, int data1, int data2) throws InvalidMidiDataException {
+		ShortMessage sm = new ShortMessage();
+		sm.setMessage(status, data1, data2);
+		receiver.send(sm, -1);
+	}
+
+}
@@ -0,0 +1,155 @@
+package rmg;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Static class that records what the algorithms generate into a
+ * lock free ring buffer instead of printing it. Only the last events
+ * are kept, and they can be printed at any time with dump().
+ *
+ * The level decides what is recorded:
+ *   off   - nothing, the algorithms only read one volatile int
+ *   keys  - key changes
+ *   notes - key changes, notes and rests
+ * Notes and rests can be sampled so only one in every n is recorded.
+ *
+ * The level and sampling can be set with the rmg.trace and
+ * rmg.trace.sample system properties, or with set().
+ */
+public final class Trace {
+
+	// Levels
+	public final static int off = 0;
+	public final static int keys = 1;
+	public final static int notes = 2;
+
+	// Kinds of events
+	final static int note = 0;
+	final static int rest = 1;
+	final static int key = 2;
+	final static String[] kind_names = {"Note", "Rest", "Key"};
+
+	// Size of the ring buffer, must be a power of 2
+	final static int capacity = 1 << 14;
+	final static int mask = capacity - 1;
+
+	// Every slot has three longs: the sequence number of the event
+	// (0 if the slot is empty), the time and the packed kind/value/length
+	private static final AtomicLongArray slots = new AtomicLongArray(capacity * 3);
+	private static final AtomicLong cursor = new AtomicLong();
+	private static final AtomicLong seen = new AtomicLong();
+
+	private static volatile int level = level(System.getProperty("rmg.trace", "off"));
+	private static volatile int sample = Integer.getInteger("rmg.trace.sample", 1);
+
+	/* Sets the level and the sampling rate (1 records every note) */
+	public static void set(int level, int sample) {
+		Trace.level = level;
+		Trace.sample = Math.max(sample, 1);
+	}
+
+	/* Returns the level */
+	public static int getLevel() {
+		return level;
+	}
+
+	/* Returns the level that has the name, or off if there is none */
+	public static int level(String name) {
+		switch(name) {
+			case "keys": return keys;
+			case "notes": return notes;
+			default: return off;
+		}
+	}
+
+	/* Records a note */
+	public static void note(long time, int pitch, long length) {
+		if(level >= notes && sampled()) {
+			record(note, time, pitch, length);
+		}
+	}
+
+	/* Records a rest */
+	public static void rest(long time, long length) {
+		if(level >= notes && sampled()) {
+			record(rest, time, 0, length);
+		}
+	}
+
+	/* Records a key change */
+	public static void key(long time, int key) {
+		if(level >= keys) {
+			record(Trace.key, time, key, 0);
+		}
+	}
+
+	/* Returns true if the current note should be recorded */
+	private static boolean sampled() {
+		int n = sample;
+		return n == 1 || seen.getAndIncrement() % n == 0;
+	}
+
+	/* Claims the next slot and writes the event into it. The slot is
+	 * marked as being written before the event and the sequence number
+	 * is written last, all with volatile writes so they can not be seen
+	 * in another order. A reader that sees the same sequence number
+	 * before and after reading the slot got a whole event
+	 */
+	private static void record(int kind, long time, int value, long length) {
+
+		long seq = cursor.incrementAndGet();
+		int i = (int) (seq & mask) * 3;
+
+		slots.set(i, 0);
+		slots.set(i + 1, time);
+		slots.set(i + 2, (length << 16) | ((value & 0xFF) << 8) | kind);
+		slots.set(i, seq);
+
+	}
+
+	/* Prints the events that are still in the buffer, oldest first */
+	public static void dump(PrintStream out) {
+
+		long end = cursor.get();
+		long start = Math.max(1, end - capacity + 1);
+
+		for(long seq = start; seq <= end; seq++) {
+
+			int i = (int) (seq & mask) * 3;
+
+			// Reading the slot, skipping it if it was being written
+			if(slots.get(i) != seq) {
+				continue;
+			}
+			long time = slots.get(i + 1);
+			long packed = slots.get(i + 2);
+			if(slots.get(i) != seq) {
+				continue;
+			}
+
+			int kind = (int) (packed & 0xFF);
+			int value = (int) (packed >>> 8) & 0xFF;
+			long length = packed >>> 16;
+
+			out.print("Time: " + time + " " + kind_names[kind] + ": ");
+			switch(kind) {
+				case note: out.println(value + " Length: " + length); break;
+				case rest: out.println(length); break;
+				default: out.println(value); break;
+			}
+
+		}
+
+	}
+
+	/* Empties the buffer */
+	public static void clear() {
+		for(int i = 0; i < capacity * 3; i += 3) {
+			slots.set(i, 0);
+		}
+		cursor.set(0);
+		seen.set(0);
+	}
+
+}
@@ -0,0 +1,114 @@
+package rmg;
+
+import java.util.List;
+
+/* Class that contains how likely each of the valid values of a track
+ * is to be picked. Every list has a weight for the value at the same
+ * place in the list of values (notes, keys, octaves, note lengths and
+ * rest lengths), and the chord list has a weight for every chord size
+ * starting at 1. Values without a weight get a weight of 1, so an
+ * empty Weights picks every value with the same probability.
+ * The interval list has a weight for every distance between two notes
+ * from 0 to 6 semitones, used by the Markov chain of algorithm 5.
+ */
+public class Weights {
+
+	private List<Double> note;
+	private List<Double> key;
+	private List<Double> octave;
+	private List<Double> note_dur;
+	private List<Double> rest_dur;
+	private List<Double> chord;
+	private List<Double> interval;
+
+	/* Constructor */
+	public Weights() {
+		note = null;
+		key = null;
+		octave = null;
+		note_dur = null;
+		rest_dur = null;
+		chord = null;
+		interval = null;
+	}
+
+	/* Returns the weights of a list of values as an array
+	 * @param weights Weights given, or null
+	 * @param size Number of values
+	 * @throws IllegalArgumentException If there are more weights than
+	 *         values, so a weight is not quietly left out
+	 */
+	static double[] array(List<Double> weights, int size) {
+
+		if(weights != null && weights.size() > size) {
+			throw new IllegalArgumentException("There are " + weights.size() + " weights for " + size + " values");
+		}
+
+		double[] array = new double[size];
+		for(int i = 0; i < size; i++) {
+			array[i] = weights != null && i < weights.size() ? weights.get(i).doubleValue() : 1;
+		}
+
+		return array;
+
+	}
+
+	/* Getters and Setters for fields*/
+
+	public List<Double> getNote() {
+		return note;
+	}
+
+	public void setNote(List<Double> note) {
+		this.note = note;
+	}
+
+	public List<Double> getKey() {
+		return key;
+	}
+
+	public void setKey(List<Double> key) {
+		this.key = key;
+	}
+
+	public List<Double> getOctave() {
+		return octave;
+	}
+
+	public void setOctave(List<Double> octave) {
+		this.octave = octave;
+	}
+
+	public List<Double> getNote_dur() {
+		return note_dur;
+	}
+
+	public void setNote_dur(List<Double> note_dur) {
+		this.note_dur = note_dur;
+	}
+
+	public List<Double> getRest_dur() {
+		return rest_dur;
+	}
+
+	public void setRest_dur(List<Double> rest_dur) {
+		this.rest_dur = rest_dur;
+	}
+
+	public List<Double> getChord() {
+		return chord;
+	}
+
+	public void setChord(List<Double> chord) {
+		this.chord = chord;
+	}
+
+	public List<Double> getInterval() {
+		return interval;
+	}
+
+	public void setInterval(List<Double> interval) {
+		this.interval = interval;
+	}
+
+}
@@ -0,0 +1,72 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/* Picks many indexes from tables and checks how often every index is
+ * picked against its weight
+ */
+public class AliasTest {
+
+	// Variables for readability and functionality
+	final static int picks = 1_000_000;
+	final static double tolerance = 0.005;
+
+	/* Every index is picked about as often as its share of the weights */
+	@Test
+	public void frequencies() {
+
+		double[] weights = {1, 0, 3, 0.5, 2.5};
+		Alias alias = new Alias(weights);
+		assertFalse(alias.isUniform());
+
+		int[] counts = count(alias);
+		for(int i = 0; i < weights.length; i++) {
+			assertEquals(weights[i] / 7, (double) counts[i] / picks, tolerance, "index " + i);
+		}
+		assertEquals(0, counts[1]);
+
+	}
+
+	/* Equal weights pick every index about as often */
+	@Test
+	public void uniform() {
+
+		Alias alias = Alias.uniform(4);
+		assertTrue(alias.isUniform());
+		assertEquals(4, alias.size());
+
+		for(int count : count(alias)) {
+			assertEquals(0.25, (double) count / picks, tolerance);
+		}
+
+	}
+
+	/* Weights that can not be picked from are rejected */
+	@Test
+	public void invalid() {
+		assertThrows(IllegalArgumentException.class, () -> new Alias(new double[] {0, 0}));
+		assertThrows(IllegalArgumentException.class, () -> new Alias(new double[] {1, -1}));
+		assertThrows(IllegalArgumentException.class, () -> new Alias(new double[] {1, Double.NaN}));
+	}
+
+	/* Returns how often every index is picked */
+	private static int[] count(Alias alias) {
+
+		SplittableRandom random = new SplittableRandom(42);
+		int[] counts = new int[alias.size()];
+		for(int i = 0; i < picks; i++) {
+			counts[alias.next(random)]++;
+		}
+
+		return counts;
+
+	}
+
+}
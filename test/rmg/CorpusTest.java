@@ -0,0 +1,92 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* Scans files with a finer resolution than RMG, where a short note is
+ * less than a tick of RMG
+ */
+public class CorpusTest {
+
+	// Variables for readability and functionality
+	final static int resolution = 3840;
+	final static int[] scale = {60, 62, 64, 65, 67, 69, 71, 72};
+
+	/* A length of less than a tick is the shortest length */
+	@Test
+	public void shortestLength() {
+		assertEquals(Corpus.lengths.length / 2 - 1, Corpus.length(0));
+		assertEquals(Corpus.length(1), Corpus.length(0));
+	}
+
+	/* Notes of 2 ticks at 4 times the resolution are counted as the
+	 * shortest length and not as the longest
+	 */
+	@Test
+	public void shortNotes(@TempDir Path dir) throws IOException {
+
+		Files.write(dir.resolve("short.mid"), file(resolution, 2));
+		Spec spec = Corpus.scan(dir, 1).spec();
+
+		assertArrayEquals(new long[] {Corpus.lengths[Corpus.length(1)]}, spec.note_dur);
+
+	}
+
+	/* Returns a midi file of type 0 with the notes of the scale, one
+	 * every quarter note
+	 * @param length Length of every note in ticks of the file
+	 */
+	static byte[] file(int resolution, long length) {
+
+		ByteArrayOutputStream track = new ByteArrayOutputStream();
+		long last = 0;
+		for(int i = 0; i < scale.length; i++) {
+			long on = (long) i * resolution;
+			vlq(track, on - last);
+			track.write(0x90);
+			track.write(scale[i]);
+			track.write(100);
+			vlq(track, length);
+			track.write(0x80);
+			track.write(scale[i]);
+			track.write(0);
+			last = on + length;
+		}
+		vlq(track, 0);
+		track.write(0xFF);
+		track.write(0x2F);
+		track.write(0);
+
+		byte[] events = track.toByteArray();
+		ByteBuffer buf = ByteBuffer.allocate(22 + events.length);
+		buf.putInt(0x4D546864).putInt(6).putShort((short) 0).putShort((short) 1).putShort((short) resolution);
+		buf.putInt(0x4D54726B).putInt(events.length).put(events);
+
+		return buf.array();
+
+	}
+
+	/* Writes a variable length quantity */
+	private static void vlq(ByteArrayOutputStream out, long value) {
+
+		int shift = 0;
+		while((value >>> (shift + 7)) != 0) {
+			shift += 7;
+		}
+		for(; shift > 0; shift -= 7) {
+			out.write((int) (0x80 | ((value >>> shift) & 0x7F)));
+		}
+		out.write((int) (value & 0x7F));
+
+	}
+
+}
@@ -0,0 +1,77 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/* Generates the same tracks again and again, which must always give
+ * the same midi file for the same seed and options
+ */
+public class DeterminismTest {
+
+	// Variables for readability and functionality
+	final static int algorithms = 6;
+	final static long seed = 42;
+
+	// Enough bars for a few segments, so they are put together in
+	// a different order on a different number of threads
+	final static int bars = 3 * Segments.segment_bars + 17;
+
+	/* Every algorithm gives the same file twice */
+	@Test
+	public void everyAlgorithm() throws Exception {
+		for(int alg = 1; alg <= algorithms; alg++) {
+			assertArrayEquals(file(alg, 16, false, 1), file(alg, 16, false, 1), "algorithm " + alg);
+		}
+	}
+
+	/* The segments of a long track give the same file on any number of
+	 * threads
+	 */
+	@Test
+	public void threads() throws Exception {
+		for(int alg = 1; alg <= algorithms; alg++) {
+			byte[] one = file(alg, bars, false, 1);
+			assertArrayEquals(one, file(alg, bars, false, 1), "algorithm " + alg);
+			assertArrayEquals(one, file(alg, bars, false, 4), "algorithm " + alg);
+		}
+	}
+
+	/* The parts of an ensemble give the same file on any number of
+	 * threads
+	 */
+	@Test
+	public void ensemble() throws Exception {
+		byte[] one = file(5, bars, true, 1);
+		assertArrayEquals(one, file(5, bars, true, 3));
+		assertArrayEquals(one, file(5, bars, true, 8));
+	}
+
+	/* Returns the file of the track, generated in a pool of the threads */
+	private static byte[] file(int alg, int bars, boolean ensemble, int threads) throws Exception {
+
+		Map<String, String> values = new HashMap<>();
+		values.put("alg", Integer.toString(alg));
+		values.put("bars", Integer.toString(bars));
+		values.put("seed", Long.toString(seed));
+		values.put("triplets", "true");
+		values.put("rests", "1/8");
+
+		Info info = new Options(values).info();
+		Info[] parts = ensemble ? Ensemble.parts(info) : new Info[] {info};
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			long end = pool.submit(() -> Segments.generate(parts)).get();
+			return MidiWriter.toByteArray(1, end + Engine.resolution, parts);
+		} finally {
+			pool.shutdown();
+		}
+
+	}
+
+}
@@ -0,0 +1,59 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+/* Adds events to a store with small chunks and reads them back in
+ * every order, so the window is moved back and forth along the file
+ */
+public class EventStoreTest {
+
+	// Variables for readability and functionality
+	final static int chunk = 16;
+	final static int count = 1000;
+
+	/* Every event is read back as it was added */
+	@Test
+	public void readBack() throws IOException {
+
+		try(EventStore store = new EventStore(chunk)) {
+
+			EventBuffer events = new EventBuffer();
+			for(int i = count - 1; i >= 0; i--) {
+				events.add(i, EventBuffer.note_on, 60, i % 128);
+			}
+			store.drain(events, count / 2);
+			store.drain(events);
+			assertEquals(count, store.count());
+
+			// Forwards, backwards and jumping between the chunks
+			for(int i = 0; i < count; i++) {
+				assertEquals(event(i), store.event(i));
+			}
+			for(int i = count - 1; i >= 0; i--) {
+				assertEquals(event(i), store.event(i));
+			}
+			for(int i = 0; i < count; i++) {
+				int j = i * 37 % count;
+				assertEquals(event(j), store.event(j));
+			}
+
+			// Reading the events of a new track after clearing the store
+			store.clear();
+			store.add(event(7));
+			assertEquals(1, store.count());
+			assertEquals(event(7), store.event(0));
+
+		}
+
+	}
+
+	/* Returns the event that was added at the index */
+	private static long event(int i) {
+		return EventBuffer.pack(i, EventBuffer.note_on, 60, i % 128);
+	}
+
+}
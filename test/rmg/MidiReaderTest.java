@@ -0,0 +1,105 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/* Reads files that are put together by hand, so every chunk and
+ * length is known
+ */
+public class MidiReaderTest {
+
+	/* Meta events and sysex are skipped and the notes are read */
+	@Test
+	public void skipsMetaAndSysex() throws IOException {
+
+		byte[] bytes = file(
+				track(0x00, 0xFF, 0x03, 0x02, 'h', 'i', 0x00, 0xF0, 0x01, 0xF7, 0x00, 0x90, 60, 100, 0x60, 60, 0),
+				track(0x81, 0x00, 0x91, 64, 90));
+
+		assertEquals(List.of("0 0 90 60 100", "0 96 90 60 0", "1 128 91 64 90"), read(bytes));
+
+	}
+
+	/* A meta length that goes past the end of its track is corrupt, even
+	 * if the file has enough bytes after it
+	 */
+	@Test
+	public void metaLongerThanTrack() {
+
+		byte[] bytes = file(track(0x00, 0xFF, 0x01, 0x20), track(new int[64]));
+		IOException e = assertThrows(IOException.class, () -> read(bytes));
+		assertEquals("Event is longer than the chunk", e.getMessage());
+
+	}
+
+	/* The same for sysex */
+	@Test
+	public void sysexLongerThanTrack() {
+
+		byte[] bytes = file(track(0x00, 0xF0, 0x20), track(new int[64]));
+		assertThrows(IOException.class, () -> read(bytes));
+
+	}
+
+	/* Returns what the reader reports, one line for every message */
+	private static List<String> read(byte[] bytes) throws IOException {
+
+		List<String> messages = new ArrayList<>();
+		int[] track = {-1};
+		MidiReader.read(ByteBuffer.wrap(bytes), new MidiReader.Listener() {
+			@Override
+			public void header(int type, int tracks, int resolution) {
+				assertEquals(1, type);
+			}
+			@Override
+			public void track(int index) {
+				track[0] = index;
+			}
+			@Override
+			public void message(long tick, int status, int data1, int data2) {
+				messages.add(track[0] + " " + tick + " " + Integer.toHexString(status) + " " + data1 + " " + data2);
+			}
+		});
+
+		return messages;
+
+	}
+
+	/* Returns a file of type 1 with the track chunks */
+	private static byte[] file(byte[]... tracks) {
+
+		ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+		buf.putInt(0x4D546864).putInt(6).putShort((short) 1).putShort((short) tracks.length).putShort((short) 96);
+		for(byte[] track : tracks) {
+			buf.put(track);
+		}
+
+		byte[] bytes = new byte[buf.position()];
+		buf.flip().get(bytes);
+		return bytes;
+
+	}
+
+	/* Returns a track chunk with the bytes */
+	private static byte[] track(int... data) {
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer header = ByteBuffer.allocate(8).putInt(0x4D54726B).putInt(data.length);
+		out.write(header.array(), 0, 8);
+		for(int b : data) {
+			out.write(b);
+		}
+
+		return out.toByteArray();
+
+	}
+
+}
@@ -0,0 +1,165 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Track;
+
+import org.junit.jupiter.api.Test;
+
+/* Writes files with MidiWriter and reads them back with the reader of
+ * the JDK and with MidiReader, which must both see the same notes
+ */
+public class MidiWriterTest {
+
+	/* The notes of every track are the notes of its part */
+	@Test
+	public void roundTrip() throws Exception {
+
+		Info[] parts = ensemble();
+		long end = Segments.generate(parts) + Engine.resolution;
+		byte[] bytes = MidiWriter.toByteArray(1, end, parts);
+
+		Sequence sequence = MidiSystem.getSequence(new ByteArrayInputStream(bytes));
+		assertEquals(MidiWriter.resolution, sequence.getResolution());
+		Track[] tracks = sequence.getTracks();
+		assertEquals(parts.length, tracks.length);
+
+		List<List<Long>> read = reader(bytes);
+		for(int i = 0; i < parts.length; i++) {
+			List<Long> expected = notes(parts[i].getEvents());
+			assertEquals(expected, notes(tracks[i]), "track " + i);
+			assertEquals(expected, read.get(i), "track " + i);
+			assertEquals(end, tracks[i].ticks());
+		}
+
+	}
+
+	/* The largest delta that fits in 4 bytes is read back as it was */
+	@Test
+	public void largestDelta() throws Exception {
+
+		long tick = MidiWriter.max_vlq;
+		Info part = part(tick);
+		byte[] bytes = MidiWriter.toByteArray(0, tick, part);
+
+		List<Long> expected = notes(part.getEvents());
+		assertEquals(expected, notes(MidiSystem.getSequence(new ByteArrayInputStream(bytes)).getTracks()[0]));
+		assertEquals(expected, reader(bytes).get(0));
+
+	}
+
+	/* A delta that does not fit in 4 bytes is not written */
+	@Test
+	public void deltaTooLarge() {
+		Info part = part(MidiWriter.max_vlq + 1);
+		assertThrows(IllegalArgumentException.class, () -> MidiWriter.toByteArray(0, 0, part));
+	}
+
+	/* Returns the parts of an ensemble with a fixed seed */
+	private static Info[] ensemble() {
+
+		Map<String, String> values = new HashMap<>();
+		values.put("alg", "5");
+		values.put("bars", "16");
+		values.put("seed", "42");
+
+		return Ensemble.parts(new Options(values).info());
+
+	}
+
+	/* Returns a part with a note at the tick, right after the events of
+	 * the template at the start
+	 */
+	private static Info part(long tick) {
+
+		Info part = new Info();
+		EventBuffer events = new EventBuffer();
+		events.note(0, 64, tick, 1);
+		part.setEvents(events);
+
+		return part;
+
+	}
+
+	/* Returns the notes of the events, with note offs as note ons
+	 * without velocity like they are written
+	 */
+	private static List<Long> notes(EventBuffer events) {
+
+		events.sort();
+		List<Long> notes = new ArrayList<>();
+		for(int i = 0; i < events.size(); i++) {
+			long event = events.get(i);
+			note(notes, EventBuffer.tick(event), EventBuffer.status(event), EventBuffer.data1(event),
+					EventBuffer.data2(event));
+		}
+
+		return notes;
+
+	}
+
+	/* Returns the notes of a track read by the JDK */
+	private static List<Long> notes(Track track) {
+
+		List<Long> notes = new ArrayList<>();
+		for(int i = 0; i < track.size(); i++) {
+			MidiEvent event = track.get(i);
+			if(event.getMessage() instanceof ShortMessage) {
+				ShortMessage message = (ShortMessage) event.getMessage();
+				note(notes, event.getTick(), message.getStatus(), message.getData1(), message.getData2());
+			}
+		}
+
+		return notes;
+
+	}
+
+	/* Returns the notes of every track read by MidiReader */
+	private static List<List<Long>> reader(byte[] bytes) throws Exception {
+
+		List<List<Long>> tracks = new ArrayList<>();
+		MidiReader.read(ByteBuffer.wrap(bytes), new MidiReader.Listener() {
+			@Override
+			public void header(int type, int count, int resolution) {
+				assertEquals(MidiWriter.resolution, resolution);
+			}
+			@Override
+			public void track(int index) {
+				tracks.add(new ArrayList<>());
+			}
+			@Override
+			public void message(long tick, int status, int data1, int data2) {
+				note(tracks.get(tracks.size() - 1), tick, status, data1, data2);
+			}
+		});
+
+		return tracks;
+
+	}
+
+	/* Adds the message if it is a note */
+	private static void note(List<Long> notes, long tick, int status, int data1, int data2) {
+
+		int type = status & 0xF0;
+		if(type == 0x80 || (type == 0x90 && data2 == 0)) {
+			notes.add(EventBuffer.pack(tick, 0x90 | (status & 0x0F), data1, 0));
+		}
+		else if(type == 0x90) {
+			notes.add(EventBuffer.pack(tick, status, data1, data2));
+		}
+
+	}
+
+}
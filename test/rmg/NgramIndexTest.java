@@ -0,0 +1,40 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/* Builds an index of a file and reads the counts back from it */
+public class NgramIndexTest {
+
+	/* Notes shorter than a tick of RMG are tokens of the shortest length */
+	@Test
+	public void shortNotes(@TempDir Path dir) throws IOException {
+
+		Path midi = Files.createDirectory(dir.resolve("midi"));
+		Files.write(midi.resolve("short.mid"), CorpusTest.file(CorpusTest.resolution, 2));
+		Path out = dir.resolve("short.idx");
+		NgramIndex.build(midi, out, 2, 1);
+
+		NgramIndex index = NgramIndex.open(out);
+		assertEquals(2, index.getOrder());
+		assertEquals(1, index.getFiles());
+
+		// Counting the notes of every pitch class after the empty context
+		long shortest = 0;
+		long longest = 0;
+		for(int pc = 0; pc < NgramIndex.num_notes; pc++) {
+			shortest += index.count(NgramIndex.context(), NgramIndex.note(pc, Corpus.length(1)));
+			longest += index.count(NgramIndex.context(), NgramIndex.note(pc, 0));
+		}
+		assertEquals(CorpusTest.scale.length, shortest);
+		assertEquals(0, longest);
+
+	}
+
+}
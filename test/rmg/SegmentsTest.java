@@ -0,0 +1,164 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/* Checks the plan of the keys, how the segments are cut and put
+ * together, and that the segments give the same track however they
+ * are run
+ */
+public class SegmentsTest {
+
+	// Variables for readability and functionality
+	final static long bar = Segments.bar;
+	final static int segments = 5;
+	final static int bars = (segments - 1) * Segments.segment_bars + 31;
+
+	/* Generating all the segments at once on many threads gives the same
+	 * notes as one segment after the other on one thread
+	 */
+	@Test
+	public void sameAsOneThread() throws Exception {
+		for(int alg = 1; alg <= 6; alg++) {
+
+			Info many = info(alg, 7);
+			long time = Segments.generate(many);
+
+			Info one = info(alg, 7);
+			ForkJoinPool pool = new ForkJoinPool(1);
+			Segments.Builder builder = new Segments.Builder(one);
+			try {
+				pool.submit(() -> {
+					while(builder.hasNext()) {
+						builder.next(1);
+					}
+				}).get();
+			} finally {
+				pool.shutdown();
+			}
+
+			assertEquals(segments, builder.getCount());
+			assertEquals(time, builder.getTime(), "algorithm " + alg);
+			assertArrayEquals(events(many), events(one), "algorithm " + alg);
+
+		}
+	}
+
+	/* The keys of the segments only depend on the seed, and every key
+	 * has a note of the key before it
+	 */
+	@Test
+	public void plan() {
+
+		Info info = info(3, 11);
+		int[] first = keys(info);
+		assertArrayEquals(first, keys(info));
+
+		Spec spec = info.getSpec();
+		for(int i = 1; i < first.length; i++) {
+			boolean shared = false;
+			for(int n : spec.tone) {
+				int pc = spec.pitchIn(first[i - 1], 0, n) % Segments.num_notes;
+				for(int k : spec.graph.candidates(pc)) {
+					shared |= k == first[i];
+				}
+			}
+			assertTrue(shared, "segment " + i);
+		}
+
+	}
+
+	/* Notes that end after the segment are cut and notes that start
+	 * after it are dropped
+	 */
+	@Test
+	public void stitch() {
+
+		EventBuffer notes = new EventBuffer();
+		notes.note(0, 60, 0, bar);
+		notes.note(0, 62, bar / 2, bar);
+		notes.note(0, 64, bar, bar);
+
+		EventBuffer events = new EventBuffer();
+		Segments.stitch(notes, events, bar);
+
+		assertEquals(4, events.size());
+		assertEquals(bar, EventBuffer.tick(events.get(1)));
+		assertEquals(bar, EventBuffer.tick(events.get(3)));
+
+	}
+
+	/* Events that are not pairs of a note on and its note off are not
+	 * put together
+	 */
+	@Test
+	public void stitchPairs() {
+
+		EventBuffer notes = new EventBuffer();
+		notes.note(0, 60, 0, bar);
+		notes.sort();
+		notes.add(0, EventBuffer.note_on, 62, 100);
+		notes.add(bar, EventBuffer.note_off, 64, 0);
+
+		assertThrows(IllegalStateException.class, () -> Segments.stitch(notes, new EventBuffer(), bar));
+
+	}
+
+	/* A segment far into a very long track starts at its own bar */
+	@Test
+	public void farSegment() {
+		int index = 10_000_000;
+		Info segment = Segments.segment(info(1, 1), 0, index, 1);
+		assertEquals(index * (long) Segments.segment_bars * bar, segment.getTime());
+	}
+
+	/* Returns the info of a track of several segments */
+	private static Info info(int alg, long seed) {
+
+		Map<String, String> values = new HashMap<>();
+		values.put("alg", Integer.toString(alg));
+		values.put("bars", Integer.toString(bars));
+		values.put("seed", Long.toString(seed));
+		values.put("keys", "0,2,5,7,9");
+		values.put("rests", "1/8");
+
+		return new Options(values).info();
+
+	}
+
+	/* Returns the keys of the segments of the track */
+	private static int[] keys(Info info) {
+
+		Segments.Plan plan = new Segments.Plan(info);
+		int[] keys = new int[segments];
+		for(int i = 0; i < segments; i++) {
+			keys[i] = plan.next();
+		}
+
+		return keys;
+
+	}
+
+	/* Returns the events of the track in order */
+	private static long[] events(Info info) {
+
+		EventBuffer events = info.getEvents();
+		events.sort();
+		long[] array = new long[events.size()];
+		for(int i = 0; i < array.length; i++) {
+			array[i] = events.get(i);
+		}
+
+		return array;
+
+	}
+
+}
@@ -0,0 +1,68 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+/* Asks a cache for the same file from many threads at once */
+public class SequenceCacheTest {
+
+	// Variables for readability and functionality
+	final static int threads = 8;
+
+	/* The file is generated once and every thread gets it */
+	@Test
+	public void singleFlight() throws Exception {
+
+		SequenceCache cache = new SequenceCache(SequenceCache.default_limit);
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+
+			List<Future<byte[]>> files = new ArrayList<>();
+			for(int i = 0; i < threads; i++) {
+				files.add(executor.submit(() -> {
+					Info[] parts = parts();
+					start.await();
+					return cache.bytes(parts);
+				}));
+			}
+			start.countDown();
+
+			byte[] file = files.get(0).get();
+			for(Future<byte[]> other : files) {
+				assertSame(file, other.get());
+			}
+			assertEquals(1, cache.getSize());
+			assertEquals(threads - 1, cache.getWaits() + cache.getHits());
+
+		} finally {
+			executor.shutdown();
+		}
+
+	}
+
+	/* Returns the parts of a track with a fixed seed, new for every call */
+	private static Info[] parts() {
+
+		Map<String, String> values = new HashMap<>();
+		values.put("alg", "5");
+		values.put("bars", "2000");
+		values.put("seed", "42");
+
+		return Ensemble.parts(new Options(values).info());
+
+	}
+
+}
@@ -0,0 +1,74 @@
+package rmg;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/* Checks how the weights of the values are put in the tables of a spec */
+public class SpecTest {
+
+	// Variables for readability and functionality
+	final static long triplet = Spec.triplet;
+
+	/* Values without a weight get a weight of 1 */
+	@Test
+	public void missingWeights() {
+		assertArrayEquals(new double[] {1, 1, 1}, Weights.array(null, 3));
+		assertArrayEquals(new double[] {4, 2, 1}, Weights.array(Arrays.asList(4.0, 2.0), 3));
+	}
+
+	/* A weight without a value is an error instead of being left out */
+	@Test
+	public void extraWeights() {
+
+		assertThrows(IllegalArgumentException.class, () -> Weights.array(Arrays.asList(4.0, 2.0, 1.0), 2));
+
+		Weights weights = new Weights();
+		weights.setNote(Arrays.asList(1.0, 2.0, 3.0));
+		assertThrows(IllegalArgumentException.class, () -> spec(Arrays.asList(480L, 240L), weights));
+
+	}
+
+	/* The triplets are moved to the end with their weights, and the
+	 * lengths that are not triplets keep theirs
+	 */
+	@Test
+	public void straightWeights() {
+
+		Weights weights = new Weights();
+		weights.setNote_dur(Arrays.asList(1.0, 5.0, 3.0));
+		Spec spec = spec(Arrays.asList(480L, triplet, 240L), weights);
+
+		assertArrayEquals(new long[] {480, 240, triplet}, spec.note_dur);
+		assertArrayEquals(new double[] {1, 3, 5}, spec.note_dur_w);
+		assertArrayEquals(new double[] {1, 3}, spec.straight_w);
+
+	}
+
+	/* If only the triplets have a weight, the length of a triplet is
+	 * picked from the other lengths with the same weight
+	 */
+	@Test
+	public void tripletWeightsOnly() {
+
+		Weights weights = new Weights();
+		weights.setNote_dur(Arrays.asList(0.0, 1.0, 0.0));
+		Spec spec = spec(Arrays.asList(480L, triplet, 240L), weights);
+
+		assertArrayEquals(new double[] {0, 0, 1}, spec.note_dur_w);
+		assertArrayEquals(new double[] {1, 1}, spec.straight_w);
+
+	}
+
+	/* Returns a spec of two notes with the lengths and weights */
+	private static Spec spec(List<Long> lengths, Weights weights) {
+		return new Spec(Arrays.asList(0, 7), Arrays.asList(0), Arrays.asList(4), lengths,
+				new ArrayList<Long>(), weights);
+	}
+
+}